@@ -0,0 +1,106 @@
+package us.beacondigital.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.beacondigital.utils.ByteBufferPool;
+import us.beacondigital.utils.IOUtils;
+import us.beacondigital.utils.image.DiskCache;
+
+/**
+ * Reading a cached image's bytes before decoding: the stream copy through a ByteArrayOutputStream the
+ * loader used to do, against reading the file through its channel into an exact or a pooled buffer.
+ * Files are in a temp directory so they are in the page cache, which is what the syscall and copy
+ * overhead is measured against.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DiskReadBenchmarks {
+
+	private static final int FILES = 16;
+
+	// Thumbnail, list image, full screen photo
+	@Param({ "20000", "150000", "800000" })
+	public int size;
+
+	private File directory;
+	private DiskCache cache;
+	private ByteBufferPool pool;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = File.createTempFile("diskread", "");
+		directory.delete();
+		directory.mkdirs();
+		cache = new DiskCache(directory, 1024L * 1024 * 1024);
+		Random random = new Random(42);
+		for (int i = 0; i < FILES; i++) {
+			// Encoded images don't compress, neither should the test data
+			byte[] data = new byte[size];
+			random.nextBytes(data);
+			cache.put("image" + i + ".jpg", data);
+		}
+		pool = new ByteBufferPool(4, 1024 * 1024);
+	}
+
+	@TearDown
+	public void tearDown() {
+		cache.clear();
+		directory.delete();
+	}
+
+	@Benchmark
+	public byte[] streamCopy() throws IOException {
+		InputStream in = cache.get(nextKey());
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			IOUtils.copy(in, out);
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public ByteBuffer channelRead() {
+		return cache.read(nextKey(), null);
+	}
+
+	@Benchmark
+	public int pooledChannelRead() {
+		ByteBuffer buffer = cache.read(nextKey(), pool);
+		int remaining = buffer.remaining();
+		pool.put(buffer);
+		return remaining;
+	}
+
+	private String nextKey() {
+		next = (next + 1) % FILES;
+		return "image" + next + ".jpg";
+	}
+
+}
@@ -0,0 +1,57 @@
+package us.beacondigital.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.beacondigital.utils.image.ImageInfo;
+import us.beacondigital.utils.image.ImageInfo.ImageDescriptor;
+
+/**
+ * The image info's string form is the memory and disk cache key, so it is built on every lookup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageInfoBenchmarks {
+
+	private ImageInfo info;
+	private ImageInfo other;
+
+	@Setup
+	public void setup() {
+		info = new ImageInfo(ImageDescriptor.create(12345, "product", "large photo"),
+				"http://www.beacondigital.us/images/products/12345/photo_large.jpg?v=3");
+		other = new ImageInfo(ImageDescriptor.create(12345, "product", "large photo"),
+				"http://www.beacondigital.us/images/products/12345/photo_large.jpg?v=3");
+	}
+
+	@Benchmark
+	public String key() {
+		return info.toString();
+	}
+
+	@Benchmark
+	public boolean equalKeys() {
+		return info.equals(other);
+	}
+
+	@Benchmark
+	public ImageInfo create() {
+		return new ImageInfo(ImageDescriptor.create(12345, "product", "large photo"),
+				"http://www.beacondigital.us/images/products/12345/photo_large.jpg?v=3");
+	}
+
+}
@@ -0,0 +1,61 @@
+package us.beacondigital.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import us.beacondigital.utils.JSONHelper;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JSONHelperBenchmarks {
+
+	private JSONObject obj;
+
+	@Setup
+	public void setup() throws JSONException {
+		obj = new JSONObject("{\"id\":12345,\"name\":\"Beacon Digital\",\"price\":19.99,\"active\":true,"
+				+ "\"owner\":{\"id\":7,\"name\":\"Rich\"},\"tags\":[\"a\",\"b\",\"c\"]}");
+	}
+
+	@Benchmark
+	public void getPresent(Blackhole bh) {
+		bh.consume(JSONHelper.getInt(obj, "id"));
+		bh.consume(JSONHelper.getString(obj, "name"));
+		bh.consume(JSONHelper.getDouble(obj, "price"));
+		bh.consume(JSONHelper.getBoolean(obj, "active"));
+		bh.consume(JSONHelper.getJSONObject(obj, "owner"));
+		bh.consume(JSONHelper.getJSONArray(obj, "tags"));
+	}
+
+	@Benchmark
+	public void getMissing(Blackhole bh) {
+		bh.consume(JSONHelper.getInt(obj, "missingInt", -1));
+		bh.consume(JSONHelper.getString(obj, "missingString", null));
+		bh.consume(JSONHelper.getDouble(obj, "missingDouble", 0));
+		bh.consume(JSONHelper.getBoolean(obj, "missingBoolean", false));
+	}
+
+	@Benchmark
+	public void getWrongType(Blackhole bh) {
+		bh.consume(JSONHelper.getInt(obj, "name", -1));
+		bh.consume(JSONHelper.getBoolean(obj, "price", false));
+	}
+
+}
@@ -0,0 +1,71 @@
+package us.beacondigital.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.beacondigital.utils.StringUtils;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StringUtilsBenchmarks {
+
+	@Param({ "1024", "65536" })
+	public int streamSize;
+
+	private byte[] streamData;
+	private String url = "http://www.beacondigital.us/images/photo.jpg?size=large";
+	private String notUrl = "beacondigital dot us";
+	private String number = "-1234.5678";
+	private String notNumber = "12a4";
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder(streamSize);
+		while (sb.length() < streamSize) {
+			sb.append("{\"id\":12345,\"name\":\"Beacon Digital\",\"active\":true}\n");
+		}
+		streamData = sb.substring(0, streamSize).getBytes();
+	}
+
+	@Benchmark
+	public String readStream() {
+		return StringUtils.readStream(new ByteArrayInputStream(streamData));
+	}
+
+	@Benchmark
+	public boolean isValidUrl() {
+		return StringUtils.isValidUrl(url);
+	}
+
+	@Benchmark
+	public boolean isValidUrlRejects() {
+		return StringUtils.isValidUrl(notUrl);
+	}
+
+	@Benchmark
+	public boolean isNumeric() {
+		return StringUtils.isNumeric(number);
+	}
+
+	@Benchmark
+	public boolean isNumericRejects() {
+		return StringUtils.isNumeric(notNumber);
+	}
+
+}
@@ -0,0 +1,59 @@
+package us.beacondigital.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.beacondigital.utils.net.UrlHelper;
+import us.beacondigital.utils.net.UrlParamEncoder;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlBenchmarks {
+
+	private String plainValue = "beacondigital";
+	private String unsafeValue = "rich stern & co/search?q=50% off#top";
+	private String url = "http://api.example.com/v1/items";
+	private String urlWithQuery = "http://api.example.com/v1/items?page=2&size=20";
+
+	@Benchmark
+	public String encodePlain() {
+		return UrlParamEncoder.encode(plainValue);
+	}
+
+	@Benchmark
+	public String encodeUnsafe() {
+		return UrlParamEncoder.encode(unsafeValue);
+	}
+
+	@Benchmark
+	public String addParam() {
+		return UrlHelper.addParam(url, "q", unsafeValue);
+	}
+
+	@Benchmark
+	public String addParamToQuery() {
+		return UrlHelper.addParam(urlWithQuery, "id", 12345L);
+	}
+
+	@Benchmark
+	public String addParamChain() {
+		String result = UrlHelper.addParam(url, "page", 2);
+		result = UrlHelper.addParam(result, "size", 20);
+		result = UrlHelper.addParam(result, "sort", "name desc");
+		return UrlHelper.addParam(result, "active", true);
+	}
+
+}
@@ -0,0 +1,97 @@
+package us.beacondigital.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import us.beacondigital.utils.net.HttpClientProvider;
+import us.beacondigital.utils.net.WebRequest;
+
+/**
+ * Full round trips through the shared client against an embedded server on the loopback interface,
+ * which measures the library's own per-request overhead rather than the network
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Without TCP_NODELAY on the server, Nagle and delayed ACKs add 40ms to every response
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class WebRequestBenchmarks {
+
+	@Param({ "512", "65536" })
+	public int responseSize;
+
+	private HttpServer server;
+	private String url;
+
+	@Setup(Level.Trial)
+	public void startServer() throws IOException {
+		final byte[] body = new byte[responseSize];
+		Arrays.fill(body, (byte) 'x');
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", "text/plain");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/data";
+		// Concurrent threads reading the same URL would otherwise share one round trip
+		WebRequest.setCoalescingEnabled(false);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		WebRequest.setCoalescingEnabled(true);
+		HttpClientProvider.shutdown();
+		server.stop(0);
+		((ExecutorService) server.getExecutor()).shutdownNow();
+	}
+
+	@Benchmark
+	public String read() {
+		return WebRequest.read(url);
+	}
+
+	@Benchmark
+	public byte[] readBytes() {
+		return WebRequest.readBytes(url);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public byte[] readBytesConcurrent() {
+		return WebRequest.readBytes(url);
+	}
+
+}
@@ -0,0 +1,89 @@
+package us.beacondigital.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Small pool of heap byte buffers, so reading one file after another doesn't allocate a new array each time.
+ * Buffers are array backed so they can be handed to APIs that take a byte[], offset and length.
+ * New buffers are rounded up to a multiple of 16K, which lets a buffer be reused for files of similar size.
+ */
+public class ByteBufferPool {
+
+	private static final int ROUNDING = 16 * 1024;
+
+	// Smallest first
+	private final LinkedList<ByteBuffer> buffers = new LinkedList<ByteBuffer>();
+	private final int maxBuffers;
+	private final int maxBufferSize;
+	private int hitCount = 0;
+	private int missCount = 0;
+
+	/**
+	 * @param maxBuffers Unused buffers to hold on to, the smallest are dropped beyond this
+	 * @param maxBufferSize Larger buffers are never pooled
+	 */
+	public ByteBufferPool(int maxBuffers, int maxBufferSize) {
+		this.maxBuffers = maxBuffers;
+		this.maxBufferSize = maxBufferSize;
+	}
+
+	/**
+	 * Take the smallest pooled buffer that fits, or allocate one
+	 * @param size
+	 * @return Buffer with position 0 and limit size
+	 */
+	public synchronized ByteBuffer get(int size) {
+		Iterator<ByteBuffer> iterator = buffers.iterator();
+		while (iterator.hasNext()) {
+			ByteBuffer buffer = iterator.next();
+			if (buffer.capacity() >= size) {
+				iterator.remove();
+				hitCount++;
+				buffer.clear();
+				buffer.limit(size);
+				return buffer;
+			}
+		}
+
+		missCount++;
+		int capacity = size;
+		if (size <= maxBufferSize)
+			capacity = Math.min((size + ROUNDING - 1) / ROUNDING * ROUNDING, maxBufferSize);
+		ByteBuffer buffer = ByteBuffer.allocate(capacity);
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Give a buffer back once nothing reads from it any more.  Any array backed buffer will do,
+	 * not only ones from {@link #get(int)}.
+	 * @param buffer Ignored if null, too large or not array backed
+	 */
+	public synchronized void put(ByteBuffer buffer) {
+		if (buffer == null || !buffer.hasArray() || buffer.capacity() > maxBufferSize || maxBuffers <= 0)
+			return;
+		if (buffers.size() >= maxBuffers) {
+			if (buffers.getFirst().capacity() >= buffer.capacity())
+				return;
+			buffers.removeFirst();
+		}
+		int index = 0;
+		for (ByteBuffer pooled : buffers) {
+			if (pooled.capacity() >= buffer.capacity())
+				break;
+			index++;
+		}
+		buffers.add(index, buffer);
+	}
+
+	public synchronized void clear() {
+		buffers.clear();
+	}
+
+	public synchronized int getCount() { return buffers.size(); }
+	public synchronized int getHitCount() { return hitCount; }
+	public synchronized int getMissCount() { return missCount; }
+
+}
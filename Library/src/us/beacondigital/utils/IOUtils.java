@@ -2,9 +2,13 @@ package us.beacondigital.utils;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.http.client.HttpClient;
 
+import us.beacondigital.utils.net.HttpClientProvider;
+
 import android.database.Cursor;
 
 public class IOUtils {
@@ -21,14 +25,37 @@ public class IOUtils {
 		}
 	}
 	
+	/**
+	 * Shuts down the connection manager of a client obtained from HttpClientProvider.get().
+	 * The shared client from HttpClientProvider.getShared() is left open, see HttpClientProvider.shutdown()
+	 * @param client
+	 */
 	public static void safeClose(HttpClient client)
 	{
-		if(client != null && client.getConnectionManager() != null)
+		if(client != null && client.getConnectionManager() != null && !HttpClientProvider.isShared(client))
 		{
 			client.getConnectionManager().shutdown();
 		}
 	}
 
+	/**
+	 * Copy everything from one stream to the other, leaving both open
+	 * @param in
+	 * @param out
+	 * @return Number of bytes copied
+	 * @throws IOException
+	 */
+	public static long copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		long total = 0;
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+			total += count;
+		}
+		return total;
+	}
+
 	public static void safeClose(Cursor c) {
 		if(c != null)
 			c.close();
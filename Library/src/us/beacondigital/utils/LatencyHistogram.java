@@ -0,0 +1,110 @@
+package us.beacondigital.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram of non-negative values, typically latencies in milliseconds.
+ * Values below 8 get a bucket each and every power of two above that is split into 8 buckets,
+ * so percentiles are accurate to within about 12% over the whole range of a long.
+ * Recording is lock free and doesn't allocate, so it can be used on hot paths from any thread.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Add a value to the histogram.  Negative values are recorded as 0.
+	 * @param value
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value))
+				break;
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n > 0 ? (double) sum.get() / n : 0;
+	}
+
+	/**
+	 * Value below which the given percentage of recorded values fall, reported as
+	 * the upper bound of the bucket it landed in
+	 * @param percentile Between 0 and 100
+	 * @return 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = count.get();
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clear all recorded values.  Values recorded while resetting may or may not be kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+				getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + width - 1;
+	}
+
+}
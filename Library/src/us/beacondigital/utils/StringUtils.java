@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.regex.Pattern;
 
 import org.apache.http.HttpResponse;
 
@@ -16,6 +17,9 @@ public class StringUtils {
 	public final static String AllDigitsRegex = "^\\d+$";
 	public final static String NumericRegex = "^-?\\d*(\\.\\d+)?$";
 	
+	// Compiled once, URLs are validated for every remote image
+	private final static Pattern URLPattern = Pattern.compile(URLRegex);
+	
 	/**
 	 * Utility method for pulling plain text from an InputStream object
 	 * @param in InputStream object retrieved from an HttpResponse
@@ -30,7 +34,7 @@ public class StringUtils {
 		{
 			while((line = reader.readLine()) != null)
 			{
-				sb.append(line + "\n");
+				sb.append(line).append('\n');
 			}
 		}
 		catch(Exception ex) { }
@@ -102,7 +106,7 @@ public class StringUtils {
 			return false;
 		}
 
-		return url.matches(URLRegex);
+		return URLPattern.matcher(url).matches();
 	}
 
 	public static String readStream(HttpResponse response) {
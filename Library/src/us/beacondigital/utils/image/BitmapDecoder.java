@@ -0,0 +1,141 @@
+package us.beacondigital.utils.image;
+
+import java.io.InputStream;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Decodes images no larger than they will be displayed.  The bounds are read first so a power of two
+ * sample size can be chosen before any pixels are allocated, which cuts both decode time and heap use
+ * when large images are shown in small views.
+ * @author Rich
+ *
+ */
+public class BitmapDecoder {
+
+	/**
+	 * Read only the dimensions of an encoded image
+	 * @param in
+	 * @return Options with outWidth and outHeight set, both -1 if the image couldn't be read
+	 */
+	public static BitmapFactory.Options decodeBounds(InputStream in) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		try {
+			BitmapFactory.decodeStream(in, null, options);
+		}
+		catch(NullPointerException ex) { }
+		return options;
+	}
+
+	/**
+	 * Largest power of two sample size that keeps the decoded image at least as large as requested.
+	 * A requested dimension of zero or less leaves that dimension unconstrained.
+	 * @param width Width of the encoded image
+	 * @param height Height of the encoded image
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @return
+	 */
+	public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+		int sampleSize = 1;
+		if (width <= 0 || height <= 0 || (reqWidth <= 0 && reqHeight <= 0))
+			return sampleSize;
+
+		while (covers(width / (sampleSize * 2), reqWidth) && covers(height / (sampleSize * 2), reqHeight)) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	public static Bitmap decodeStream(InputStream in, int sampleSize) {
+		return decodeStream(in, sampleSize, null);
+	}
+
+	/**
+	 * Decode an image, into an existing bitmap when one is given.  Bitmaps are decoded mutable where
+	 * possible so they can be reused later through a {@link BitmapPool}.
+	 * @param in
+	 * @param sampleSize
+	 * @param reuse Bitmap from a {@link BitmapPool}, or null
+	 * @return null if the image couldn't be decoded
+	 * @throws IllegalArgumentException if the image can't be decoded into the given bitmap
+	 */
+	public static Bitmap decodeStream(InputStream in, int sampleSize, Bitmap reuse) {
+		return BitmapFactory.decodeStream(in, null, createOptions(sampleSize, reuse));
+	}
+
+	/**
+	 * Decode an image held in memory, downsampled to the requested size
+	 * @param data
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @return null if the image couldn't be decoded
+	 */
+	public static Bitmap decodeByteArray(byte[] data, int reqWidth, int reqHeight) {
+		return decodeByteArray(data, reqWidth, reqHeight, null);
+	}
+
+	/**
+	 * Decode an image held in memory, downsampled to the requested size and into a pooled bitmap when one fits
+	 * @param data
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @param pool Pool to take a bitmap from, or null
+	 * @return null if the image couldn't be decoded
+	 */
+	public static Bitmap decodeByteArray(byte[] data, int reqWidth, int reqHeight, BitmapPool pool) {
+		return decodeByteArray(data, 0, data.length, reqWidth, reqHeight, pool);
+	}
+
+	/**
+	 * Same as {@link #decodeByteArray(byte[], int, int, BitmapPool)} for an image held in part of an array,
+	 * typically a reused buffer
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @param pool Pool to take a bitmap from, or null
+	 * @return null if the image couldn't be decoded
+	 */
+	public static Bitmap decodeByteArray(byte[] data, int offset, int length, int reqWidth, int reqHeight, BitmapPool pool) {
+		int sampleSize = 1;
+		Bitmap reuse = null;
+		if (reqWidth > 0 || reqHeight > 0 || pool != null) {
+			BitmapFactory.Options bounds = new BitmapFactory.Options();
+			bounds.inJustDecodeBounds = true;
+			BitmapFactory.decodeByteArray(data, offset, length, bounds);
+			if (bounds.outWidth <= 0 || bounds.outHeight <= 0)
+				return null;
+			sampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, reqWidth, reqHeight);
+			if (pool != null)
+				reuse = pool.get(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888, sampleSize);
+		}
+		try {
+			return BitmapFactory.decodeByteArray(data, offset, length, createOptions(sampleSize, reuse));
+		}
+		catch(IllegalArgumentException ex) {
+			// The pooled bitmap didn't fit after all
+			return BitmapFactory.decodeByteArray(data, offset, length, createOptions(sampleSize, null));
+		}
+	}
+
+	@SuppressLint("NewApi")
+	private static BitmapFactory.Options createOptions(int sampleSize, Bitmap reuse) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		if (BitmapPool.isSupported()) {
+			options.inMutable = true;
+			options.inBitmap = reuse;
+		}
+		return options;
+	}
+
+	private static boolean covers(int size, int required) {
+		return required <= 0 || size >= required;
+	}
+
+}
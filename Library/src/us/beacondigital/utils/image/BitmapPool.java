@@ -0,0 +1,249 @@
+package us.beacondigital.utils.image;
+
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Pool of bitmaps that are no longer cached or displayed, handed back to the decoder through
+ * BitmapFactory.Options.inBitmap so scrolling through images doesn't allocate a new bitmap for each one.
+ * <p>
+ * A bitmap is only reused once nothing can still draw it.  The pool counts references to the bitmaps it
+ * manages: one for the memory cache and one for each {@link #retain(Bitmap)} by a caller displaying it.
+ * When the last one is released the bitmap is added to the pool.  Bitmaps the pool doesn't manage are
+ * never reused.  Reference counts are guarded by the pool's monitor, so a caller can look a bitmap up in
+ * the memory cache and retain it while holding it, without the cache releasing it in between.
+ * <p>
+ * Before KitKat a bitmap can only be reused for an image of exactly the same size decoded without sampling,
+ * after it any bitmap with at least as many bytes will do.  Reuse needs Honeycomb, see {@link #isSupported()}.
+ * @author Rich
+ *
+ */
+public class BitmapPool {
+
+	private static final int KITKAT = 19;
+	// Bitmap.getAllocationByteCount() is newer than the SDK this library builds against
+	private static final Method getAllocationByteCount = findAllocationByteCount();
+	// Don't use a bitmap more than this many times larger than needed, it's better spent on a larger image
+	private static final int MAX_OVERSIZE = 2;
+
+	private final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+	private final LinkedList<Bitmap> order = new LinkedList<Bitmap>();
+	private final Map<Bitmap, int[]> references = new WeakHashMap<Bitmap, int[]>();
+	private long maxSize;
+	private long size = 0;
+	private int hitCount = 0;
+	private int missCount = 0;
+	private int putCount = 0;
+	private int evictionCount = 0;
+
+	/**
+	 * @param maxBytes Bytes of unused bitmaps to hold on to, the oldest are dropped beyond this
+	 */
+	public BitmapPool(long maxBytes) {
+		maxSize = maxBytes;
+	}
+
+	/**
+	 * Decoding into an existing bitmap needs Honeycomb
+	 * @return
+	 */
+	public static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	/**
+	 * Start managing a bitmap on behalf of the memory cache, which holds the first reference to it
+	 * @param bitmap A mutable bitmap nobody else has a reference to
+	 */
+	public synchronized void manage(Bitmap bitmap) {
+		manage(bitmap, 1);
+	}
+
+	/**
+	 * Start managing a bitmap that already has more than one holder, such as the memory cache and the caller
+	 * that decoded it.  Counting them all up front means the bitmap can't be pooled before each holder is known.
+	 * @param bitmap A mutable bitmap nobody else has a reference to
+	 * @param count References to start with
+	 */
+	public synchronized void manage(Bitmap bitmap, int count) {
+		if (bitmap != null && !references.containsKey(bitmap))
+			references.put(bitmap, new int[] { count });
+	}
+
+	/**
+	 * Count another reference to a managed bitmap, typically because it is being displayed
+	 * @param bitmap Ignored if not managed by the pool
+	 */
+	public synchronized void retain(Bitmap bitmap) {
+		int[] count = bitmap != null ? references.get(bitmap) : null;
+		if (count != null)
+			count[0]++;
+	}
+
+	/**
+	 * Drop a reference to a managed bitmap, adding it to the pool when it was the last one
+	 * @param bitmap Ignored if not managed by the pool
+	 */
+	public synchronized void release(Bitmap bitmap) {
+		int[] count = bitmap != null ? references.get(bitmap) : null;
+		if (count != null && --count[0] <= 0) {
+			references.remove(bitmap);
+			put(bitmap);
+		}
+	}
+
+	/**
+	 * Take a bitmap the decoder can reuse for an image of the given size
+	 * @param width Width of the encoded image
+	 * @param height Height of the encoded image
+	 * @param config
+	 * @param sampleSize
+	 * @return null if there is none
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config, int sampleSize) {
+		Bitmap bitmap = null;
+		if (Build.VERSION.SDK_INT >= KITKAT) {
+			int decodedWidth = (width + sampleSize - 1) / sampleSize;
+			int decodedHeight = (height + sampleSize - 1) / sampleSize;
+			int needed = decodedWidth * decodedHeight * bytesPerPixel(config);
+			Integer bytes = buckets.ceilingKey(needed);
+			if (bytes != null && bytes <= needed * MAX_OVERSIZE)
+				bitmap = take(bytes, 0, 0, null);
+		}
+		else if (sampleSize == 1) {
+			bitmap = take(width * height * bytesPerPixel(config), width, height, config);
+		}
+
+		if (bitmap != null)
+			hitCount++;
+		else
+			missCount++;
+		return bitmap;
+	}
+
+	/**
+	 * Drop pooled bitmaps, oldest first, until the pool holds no more than the given bytes
+	 * @param maxBytes
+	 */
+	public synchronized void trimToSize(long maxBytes) {
+		while (size > maxBytes && !order.isEmpty()) {
+			Bitmap bitmap = order.removeFirst();
+			Integer bytes = byteCountOf(bitmap);
+			LinkedList<Bitmap> bucket = buckets.get(bytes);
+			bucket.remove(bitmap);
+			if (bucket.isEmpty())
+				buckets.remove(bytes);
+			size -= bytes;
+			evictionCount++;
+		}
+	}
+
+	public synchronized void clear() {
+		trimToSize(0);
+	}
+
+	public synchronized long getSize() { return size; }
+	public synchronized long getMaxSize() { return maxSize; }
+	public synchronized int getCount() { return order.size(); }
+	public synchronized int getHitCount() { return hitCount; }
+	public synchronized int getMissCount() { return missCount; }
+	public synchronized int getPutCount() { return putCount; }
+	public synchronized int getEvictionCount() { return evictionCount; }
+
+	public synchronized void setMaxSize(long maxBytes) {
+		maxSize = maxBytes;
+		trimToSize(maxBytes);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("BitmapPool[size=%d,max=%d,count=%d,hits=%d,misses=%d,puts=%d,evictions=%d]",
+				size, maxSize, order.size(), hitCount, missCount, putCount, evictionCount);
+	}
+
+	@SuppressLint("NewApi")
+	private void put(Bitmap bitmap) {
+		int bytes = byteCountOf(bitmap);
+		if (!isSupported() || bitmap.isRecycled() || !bitmap.isMutable() || bytes > maxSize)
+			return;
+
+		LinkedList<Bitmap> bucket = buckets.get(bytes);
+		if (bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			buckets.put(bytes, bucket);
+		}
+		bucket.addLast(bitmap);
+		order.addLast(bitmap);
+		size += bytes;
+		putCount++;
+		trimToSize(maxSize);
+	}
+
+	/**
+	 * Remove the most recently pooled bitmap from a bucket, matching the dimensions and config unless config is null
+	 */
+	private Bitmap take(int bytes, int width, int height, Bitmap.Config config) {
+		LinkedList<Bitmap> bucket = buckets.get(bytes);
+		if (bucket == null)
+			return null;
+
+		ListIterator<Bitmap> iterator = bucket.listIterator(bucket.size());
+		while (iterator.hasPrevious()) {
+			Bitmap bitmap = iterator.previous();
+			if (config == null || (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config)) {
+				iterator.remove();
+				if (bucket.isEmpty())
+					buckets.remove(bytes);
+				order.remove(bitmap);
+				size -= bytes;
+				return bitmap;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Memory held by the bitmap.  A reused bitmap may have been reconfigured to a smaller size
+	 * than its allocation, so on KitKat and later the allocation is what counts.
+	 * @param bitmap
+	 * @return
+	 */
+	static int byteCountOf(Bitmap bitmap) {
+		if (getAllocationByteCount != null) {
+			try {
+				return (Integer) getAllocationByteCount.invoke(bitmap);
+			}
+			catch (Exception e) { }
+		}
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private static Method findAllocationByteCount() {
+		if (Build.VERSION.SDK_INT < KITKAT)
+			return null;
+		try {
+			return Bitmap.class.getMethod("getAllocationByteCount");
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static int bytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.ALPHA_8)
+			return 1;
+		else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444)
+			return 2;
+		else
+			return 4;
+	}
+
+}
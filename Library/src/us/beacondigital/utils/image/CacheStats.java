@@ -0,0 +1,165 @@
+package us.beacondigital.utils.image;
+
+import us.beacondigital.utils.LatencyHistogram;
+
+/**
+ * Snapshot of the image caches at one point in time: hits, misses and evictions and bytes held for memory,
+ * the bitmap pool and disk, and how long disk reads, decodes and downloads have taken.  The live counters cost
+ * nothing to keep up to date, only taking a snapshot allocates, so it is fine to call from telemetry.
+ * Get one from {@link ImageCacheHelper#getCacheStats()}.
+ * @author Rich
+ *
+ */
+public class CacheStats {
+
+	/**
+	 * Percentiles of one kind of operation, in milliseconds
+	 */
+	public static class Timing {
+		private final long count;
+		private final double mean;
+		private final long p50;
+		private final long p90;
+		private final long p99;
+		private final long max;
+
+		Timing(LatencyHistogram histogram) {
+			count = histogram.getCount();
+			mean = histogram.getMean();
+			p50 = histogram.getPercentile(50);
+			p90 = histogram.getPercentile(90);
+			p99 = histogram.getPercentile(99);
+			max = histogram.getMax();
+		}
+
+		public long getCount() { return count; }
+		public double getMean() { return mean; }
+		public long getP50() { return p50; }
+		public long getP90() { return p90; }
+		public long getP99() { return p99; }
+		public long getMax() { return max; }
+
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", count, mean, p50, p90, p99, max);
+		}
+	}
+
+	private long memoryHitCount = 0;
+	private long memoryMissCount = 0;
+	private long memoryEvictionCount = 0;
+	private long memorySize = 0;
+	private long memoryBudget = 0;
+	private long memoryMaxSize = 0;
+	private long poolHitCount = 0;
+	private long poolMissCount = 0;
+	private long poolSize = 0;
+	private long diskHitCount = 0;
+	private long diskMissCount = 0;
+	private long diskEvictionCount = 0;
+	private long diskSize = 0;
+	private long diskMaxSize = 0;
+	private final Timing diskReadTime;
+	private final Timing decodeTime;
+	private final Timing networkTime;
+
+	CacheStats(ImageCacheHelper helper) {
+		if (helper.memCache != null) {
+			memoryHitCount = helper.memCache.hitCount();
+			memoryMissCount = helper.memCache.missCount();
+			memoryEvictionCount = helper.memCache.evictionCount();
+			memorySize = helper.memCache.size();
+			memoryBudget = helper.memCache.budget();
+			memoryMaxSize = helper.memCache.maxSize();
+		}
+		if (helper.bitmapPool != null) {
+			poolHitCount = helper.bitmapPool.getHitCount();
+			poolMissCount = helper.bitmapPool.getMissCount();
+			poolSize = helper.bitmapPool.getSize();
+		}
+		if (helper.diskCache != null) {
+			diskHitCount = helper.diskCache.getHitCount();
+			diskMissCount = helper.diskCache.getMissCount();
+			diskEvictionCount = helper.diskCache.getEvictionCount();
+			diskSize = helper.diskCache.getSizeIfOpen();
+			diskMaxSize = helper.diskCache.getMaxSize();
+		}
+		diskReadTime = new Timing(helper.diskReadTime);
+		decodeTime = new Timing(helper.decodeTime);
+		networkTime = new Timing(helper.networkTime);
+	}
+
+	public long getMemoryHitCount() { return memoryHitCount; }
+	public long getMemoryMissCount() { return memoryMissCount; }
+	public long getMemoryEvictionCount() { return memoryEvictionCount; }
+
+	/**
+	 * @return Bytes of bitmaps in the memory cache
+	 */
+	public long getMemorySize() { return memorySize; }
+
+	/**
+	 * @return Bytes the memory cache may hold under the current memory pressure
+	 */
+	public long getMemoryBudget() { return memoryBudget; }
+	public long getMemoryMaxSize() { return memoryMaxSize; }
+
+	/**
+	 * @return Between 0 and 1, 0 before any lookup
+	 */
+	public double getMemoryHitRatio() { return ratio(memoryHitCount, memoryMissCount); }
+
+	public long getPoolHitCount() { return poolHitCount; }
+	public long getPoolMissCount() { return poolMissCount; }
+
+	/**
+	 * @return Bytes of unused bitmaps waiting to be decoded into
+	 */
+	public long getPoolSize() { return poolSize; }
+
+	public long getDiskHitCount() { return diskHitCount; }
+	public long getDiskMissCount() { return diskMissCount; }
+	public long getDiskEvictionCount() { return diskEvictionCount; }
+
+	/**
+	 * @return Bytes of images on disk, 0 until the disk cache has been used
+	 */
+	public long getDiskSize() { return diskSize; }
+	public long getDiskMaxSize() { return diskMaxSize; }
+
+	/**
+	 * @return Between 0 and 1, 0 before any lookup
+	 */
+	public double getDiskHitRatio() { return ratio(diskHitCount, diskMissCount); }
+
+	/**
+	 * @return Reading an image's bytes from disk
+	 */
+	public Timing getDiskReadTime() { return diskReadTime; }
+
+	/**
+	 * @return Decoding an image into a bitmap
+	 */
+	public Timing getDecodeTime() { return decodeTime; }
+
+	/**
+	 * @return Downloading an image, including failed downloads
+	 */
+	public Timing getNetworkTime() { return networkTime; }
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats[memory: hits=%d misses=%d evictions=%d size=%d budget=%d max=%d; pool: hits=%d misses=%d size=%d; "
+				+ "disk: hits=%d misses=%d evictions=%d size=%d max=%d; diskRead: %s; decode: %s; network: %s]",
+				memoryHitCount, memoryMissCount, memoryEvictionCount, memorySize, memoryBudget, memoryMaxSize,
+				poolHitCount, poolMissCount, poolSize,
+				diskHitCount, diskMissCount, diskEvictionCount, diskSize, diskMaxSize,
+				diskReadTime, decodeTime, networkTime);
+	}
+
+	private static double ratio(long hits, long misses) {
+		long total = hits + misses;
+		return total > 0 ? (double) hits / total : 0;
+	}
+
+}
@@ -0,0 +1,1074 @@
+package us.beacondigital.utils.image;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import us.beacondigital.utils.ByteBufferPool;
+import us.beacondigital.utils.IOUtils;
+
+/**
+ * Byte-budgeted, least recently used file cache.  Entries are tracked in memory and in an
+ * append-only journal in the cache directory, so opening the cache doesn't scan the directory
+ * and lookups don't touch the file system until the entry is actually read.
+ * <p>
+ * Files are named after a 64 bit hash of the key rather than the key itself, so key length and
+ * characters don't matter to the file system, and spread over 256 subdirectories so no directory
+ * grows large enough to slow down opening files.  Next to each file a small ".meta" sidecar holds
+ * the original key, the size, the image format and when it was written.  Keys are percent-encoded
+ * in the journal and the sidecars, so any non-empty key can be used.
+ * <p>
+ * Writes go to a ".tmp" file next to the entry's file and are renamed over it on commit, so readers
+ * only ever see a complete file, and the previous value stays readable until then.  Each write is
+ * recorded as DIRTY when it starts and CLEAN when it is committed.  A write left dirty by a crash
+ * is deleted the next time the cache opens, without losing the value it was replacing.  Readers
+ * check the file is as long as recorded, in case the data didn't reach the disk before the rename,
+ * see {@link SyncPolicy}.  If the journal is missing or
+ * unreadable the index is rebuilt from the sidecars, oldest first.  Files found directly in the
+ * directory, written before the hashed layout, are moved into it at the same time.
+ * <p>
+ * The journal is read lazily on first use so constructing a cache on the main thread is cheap.
+ */
+public class DiskCache {
+
+	static final String JOURNAL_FILE = "journal";
+	static final String JOURNAL_FILE_TEMP = "journal.tmp";
+	static final String MAGIC = "us.beacondigital.DiskCache";
+	static final String VERSION = "3";
+	static final String META_SUFFIX = ".meta";
+	static final String TEMP_SUFFIX = ".tmp";
+
+	private static final String CLEAN = "CLEAN";
+	private static final String DIRTY = "DIRTY";
+	private static final String REMOVE = "REMOVE";
+	private static final String READ = "READ";
+
+	// Compact the journal once it holds this many records that no longer describe an entry
+	private static final int COMPACT_THRESHOLD = 2000;
+
+	/**
+	 * When written files are forced to the disk before being renamed into place
+	 */
+	public enum SyncPolicy {
+		/**
+		 * Leave it to the file system.  A crash or power loss can lose recent writes, but readers
+		 * never get a partial file.  Cheapest, and enough for data that can be downloaded again.
+		 */
+		None,
+		/**
+		 * Sync each file before it is committed, so a committed entry survives power loss
+		 */
+		Commit
+	}
+
+	private final File directory;
+	private final File journalFile;
+	private long maxBytes;
+	private SyncPolicy syncPolicy = SyncPolicy.None;
+
+	// Access ordered, so iteration starts with the least recently used entry
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+	// File names of all entries, to tell hash collisions apart
+	private final HashSet<String> fileNames = new HashSet<String>();
+	// File names of entries being committed outside the lock, kept from reuse even if the cache is cleared meanwhile
+	private final HashSet<String> committing = new HashSet<String>();
+	private long size = 0;
+	private int redundantRecords = 0;
+	private int hitCount = 0;
+	private int missCount = 0;
+	private int evictionCount = 0;
+	private Writer journalWriter = null;
+	private boolean opened = false;
+
+	/**
+	 * @param directory Directory holding the cached files and the journal
+	 * @param maxBytes Total size of cached files, least recently used files are removed beyond this
+	 */
+	public DiskCache(File directory, long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes must be positive");
+		this.directory = directory;
+		this.journalFile = new File(directory, JOURNAL_FILE);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Any non-empty key is valid, see {@link #encodeKey(String)}
+	 * @param key
+	 * @return
+	 */
+	public static boolean isValidKey(String key) {
+		return key != null && key.length() > 0;
+	}
+
+	/**
+	 * Journal records and sidecars are split on spaces and line breaks, so those and
+	 * the other control characters are written as %XX, as is the % sign itself
+	 * @param key
+	 * @return
+	 */
+	static String encodeKey(String key) {
+		StringBuilder sb = null;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c <= ' ' || c == '%' || c == 0x7f) {
+				if (sb == null)
+					sb = new StringBuilder(key.length() + 8).append(key, 0, i);
+				sb.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+			}
+			else if (sb != null) {
+				sb.append(c);
+			}
+		}
+		return sb != null ? sb.toString() : key;
+	}
+
+	/**
+	 * @param encoded
+	 * @return The key, or null if the escapes are malformed
+	 */
+	static String decodeKey(String encoded) {
+		if (encoded.indexOf('%') < 0)
+			return encoded;
+		StringBuilder sb = new StringBuilder(encoded.length());
+		for (int i = 0; i < encoded.length(); i++) {
+			char c = encoded.charAt(i);
+			if (c == '%') {
+				int high = i + 2 < encoded.length() ? Character.digit(encoded.charAt(i + 1), 16) : -1;
+				int low = i + 2 < encoded.length() ? Character.digit(encoded.charAt(i + 2), 16) : -1;
+				if (high < 0 || low < 0)
+					return null;
+				sb.append((char) ((high << 4) | low));
+				i += 2;
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Open a cached entry for reading
+	 * @param key
+	 * @return Stream the caller must close, or null if the key isn't cached
+	 */
+	public InputStream get(String key) {
+		return openEntry(key);
+	}
+
+	/**
+	 * Read a whole entry into memory with as few reads as the file system allows, straight into the buffer
+	 * without copying through a stream
+	 * @param key
+	 * @param pool Pool to take the buffer from, or null for a new buffer of exactly the entry's size
+	 * @return Array backed buffer holding the entry between position and limit, null if the key isn't cached
+	 */
+	public ByteBuffer read(String key, ByteBufferPool pool) {
+		FileInputStream in = openEntry(key);
+		if (in == null)
+			return null;
+		ByteBuffer buffer = null;
+		try {
+			FileChannel channel = in.getChannel();
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+				return null;
+			buffer = pool != null ? pool.get((int) length) : ByteBuffer.allocate((int) length);
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) { }
+			if (!buffer.hasRemaining()) {
+				buffer.flip();
+				return buffer;
+			}
+		}
+		catch (IOException e) { }
+		finally {
+			IOUtils.safeClose(in);
+		}
+		if (pool != null)
+			pool.put(buffer);
+		return null;
+	}
+
+	private FileInputStream openEntry(String key) {
+		Entry entry;
+		File file;
+		long length;
+		synchronized (this) {
+			open();
+			entry = entries.get(key);
+			if (entry == null || !entry.readable) {
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			file = fileOf(entry);
+			length = entry.length;
+			redundantRecords++;
+			appendJournal(READ, key, null);
+			compactIfNeeded();
+		}
+
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			// Size of the file actually opened, a commit renaming over it afterwards doesn't change it
+			if (in.getChannel().size() == length) {
+				return in;
+			}
+		}
+		catch (FileNotFoundException e) {
+			// Deleted behind our back
+		}
+		catch (IOException e) { }
+		IOUtils.safeClose(in);
+		discard(entry, length);
+		return null;
+	}
+
+	public synchronized boolean contains(String key) {
+		open();
+		Entry entry = entries.get(key);
+		return entry != null && entry.readable;
+	}
+
+	/**
+	 * Start writing an entry, replacing any existing value for the key.  Readers keep getting the
+	 * previous value, if any, until {@link Editor#commit()} is called.  Only one edit of a key runs
+	 * at a time, so a caller that gets null can count on the other writer to store it.
+	 * @param key
+	 * @return null if the key is invalid or another edit of the same key is in progress
+	 */
+	public synchronized Editor edit(String key) {
+		if (!isValidKey(key))
+			return null;
+		open();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(key, newFileName(key));
+			addEntry(entry);
+		}
+		else if (entry.currentEditor != null) {
+			return null;
+		}
+		Editor editor = new Editor(entry);
+		entry.currentEditor = editor;
+		appendJournal(DIRTY, key, entry.fileName);
+		flushJournal();
+		return editor;
+	}
+
+	/**
+	 * Convenience for writing an entry in one go
+	 * @param key
+	 * @param data
+	 * @return
+	 */
+	public boolean put(String key, byte[] data) {
+		Editor editor = edit(key);
+		if (editor == null)
+			return false;
+		OutputStream out = null;
+		boolean success = false;
+		try {
+			out = editor.newOutputStream();
+			out.write(data);
+			out.close();
+			out = null;
+			success = true;
+		}
+		catch (IOException e) { }
+		finally {
+			IOUtils.safeClose(out);
+		}
+		if (success)
+			editor.commit();
+		else
+			editor.abort();
+		return success;
+	}
+
+	/**
+	 * @param key
+	 * @return false if the key wasn't cached or is being written
+	 */
+	public synchronized boolean remove(String key) {
+		open();
+		Entry entry = entries.get(key);
+		if (entry == null || entry.currentEditor != null) {
+			return false;
+		}
+		deleteFiles(entry);
+		size -= entry.length;
+		removeEntry(key);
+		redundantRecords++;
+		appendJournal(REMOVE, key, null);
+		flushJournal();
+		compactIfNeeded();
+		return true;
+	}
+
+	/**
+	 * Delete every file in the cache directory and its subdirectories, including ones the cache doesn't know about
+	 */
+	public synchronized void clear() {
+		closeJournal();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && isShardName(file.getName())) {
+					File[] shardFiles = file.listFiles();
+					if (shardFiles != null) {
+						for (File shardFile : shardFiles) {
+							shardFile.delete();
+						}
+					}
+				}
+				file.delete();
+			}
+		}
+		entries.clear();
+		fileNames.clear();
+		size = 0;
+		redundantRecords = 0;
+		opened = false;
+	}
+
+	/**
+	 * Release the journal file.  The cache reopens on next use.
+	 */
+	public synchronized void close() {
+		closeJournal();
+		entries.clear();
+		fileNames.clear();
+		size = 0;
+		opened = false;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public synchronized long getMaxSize() {
+		return maxBytes;
+	}
+
+	public synchronized SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/**
+	 * Defaults to {@link SyncPolicy#None}
+	 * @param syncPolicy
+	 */
+	public synchronized void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	public synchronized void setMaxSize(long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes must be positive");
+		this.maxBytes = maxBytes;
+		if (opened) {
+			trimToSize();
+			flushJournal();
+		}
+	}
+
+	/**
+	 * @return Bytes held by committed entries
+	 */
+	public synchronized long getSize() {
+		open();
+		return size;
+	}
+
+	public synchronized int getEntryCount() {
+		open();
+		int count = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.readable)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return Bytes held by committed entries, without opening the cache if it isn't open yet
+	 */
+	synchronized long getSizeIfOpen() {
+		return opened ? size : 0;
+	}
+
+	/**
+	 * @return Reads of committed entries
+	 */
+	public synchronized int getHitCount() { return hitCount; }
+
+	/**
+	 * @return Reads of keys that weren't cached, or whose file was missing or incomplete
+	 */
+	public synchronized int getMissCount() { return missCount; }
+
+	/**
+	 * @return Entries removed to stay within the maximum size
+	 */
+	public synchronized int getEvictionCount() { return evictionCount; }
+
+	/**
+	 * @param key
+	 * @return The file holding the entry, or null if the key isn't cached or being written
+	 */
+	synchronized File getFile(String key) {
+		Entry entry = entries.get(key);
+		return entry != null ? fileOf(entry) : null;
+	}
+
+	private File fileOf(Entry entry) {
+		return new File(directory, entry.fileName);
+	}
+
+	private File metaFileOf(Entry entry) {
+		return new File(directory, entry.fileName + META_SUFFIX);
+	}
+
+	private static OutputStream openOutputStream(File file, boolean sync) throws FileNotFoundException {
+		if (!sync)
+			return new FileOutputStream(file);
+		return new FileOutputStream(file) {
+			@Override
+			public void close() throws IOException {
+				try {
+					if (getFD().valid())
+						getFD().sync();
+				}
+				finally {
+					super.close();
+				}
+			}
+		};
+	}
+
+	private File tempFileOf(Entry entry) {
+		return new File(directory, entry.fileName + TEMP_SUFFIX);
+	}
+
+	private void deleteFiles(Entry entry) {
+		fileOf(entry).delete();
+		metaFileOf(entry).delete();
+		tempFileOf(entry).delete();
+	}
+
+	/**
+	 * Drop an entry whose file turned out to be missing or incomplete, unless it was replaced in the meantime
+	 */
+	private synchronized void discard(Entry entry, long length) {
+		hitCount--;
+		missCount++;
+		if (entries.get(entry.key) != entry || entry.currentEditor != null || !entry.readable || entry.length != length)
+			return;
+		deleteFiles(entry);
+		size -= entry.length;
+		removeEntry(entry.key);
+		redundantRecords++;
+		appendJournal(REMOVE, entry.key, null);
+		flushJournal();
+		compactIfNeeded();
+	}
+
+	private void addEntry(Entry entry) {
+		entries.put(entry.key, entry);
+		fileNames.add(entry.fileName);
+	}
+
+	private void removeEntry(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			fileNames.remove(entry.fileName);
+	}
+
+	/**
+	 * Shard directory and file name from the hash of the key, with a suffix on the rare collision
+	 */
+	private String newFileName(String key) {
+		String hash = hash(key);
+		String name = hash.substring(0, 2) + '/' + hash;
+		for (int i = 1; fileNames.contains(name) || committing.contains(name); i++) {
+			name = hash.substring(0, 2) + '/' + hash + '-' + i;
+		}
+		return name;
+	}
+
+	/**
+	 * 64 bit FNV-1a, cheap to compute and plenty to keep collisions rare at cache sizes
+	 * @param key
+	 * @return 16 hex digits
+	 */
+	static String hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		String hex = Long.toHexString(hash);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	private static boolean isShardName(String name) {
+		return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0;
+	}
+
+	private void open() {
+		if (opened)
+			return;
+		opened = true;
+		directory.mkdirs();
+		entries.clear();
+		fileNames.clear();
+		size = 0;
+		boolean restored = false;
+		if (journalFile.exists()) {
+			try {
+				if (readJournal()) {
+					journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+				}
+				else {
+					rewriteJournal();
+				}
+				restored = true;
+			}
+			catch (IOException e) {
+				entries.clear();
+				fileNames.clear();
+				size = 0;
+			}
+		}
+		if (!restored) {
+			rebuildFromDirectory();
+		}
+		trimToSize();
+		flushJournal();
+	}
+
+	/**
+	 * @return false if incomplete writes were found, so the journal needs rewriting
+	 * @throws IOException If the journal is malformed
+	 */
+	private boolean readJournal() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"), 8192);
+		try {
+			if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine()) || !"".equals(reader.readLine())) {
+				throw new IOException("Unexpected journal header");
+			}
+			int records = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				readJournalLine(line);
+				records++;
+			}
+			redundantRecords = records - entries.size();
+		}
+		finally {
+			IOUtils.safeClose(reader);
+		}
+
+		// Writes that never completed leave a temp file behind, and nothing at all if there was no previous value
+		List<Entry> incomplete = new ArrayList<Entry>();
+		boolean interrupted = false;
+		for (Entry entry : entries.values()) {
+			if (entry.currentEditor != null) {
+				tempFileOf(entry).delete();
+				entry.currentEditor = null;
+				interrupted = true;
+			}
+			if (entry.readable) {
+				size += entry.length;
+			}
+			else {
+				incomplete.add(entry);
+			}
+		}
+		for (Entry entry : incomplete) {
+			removeEntry(entry.key);
+			deleteFiles(entry);
+		}
+		return !interrupted;
+	}
+
+	private void readJournalLine(String line) throws IOException {
+		String[] parts = line.split(" ");
+		String key = parts.length >= 2 ? decodeKey(parts[1]) : null;
+		if (!isValidKey(key)) {
+			throw new IOException("Unexpected journal line: " + line);
+		}
+		if (parts[0].equals(REMOVE) && parts.length == 2) {
+			removeEntry(key);
+			return;
+		}
+		if (parts[0].equals(READ) && parts.length == 2) {
+			// Moves the entry to the most recently used end
+			entries.get(key);
+			return;
+		}
+
+		boolean clean = parts[0].equals(CLEAN) && parts.length == 5;
+		boolean dirty = parts[0].equals(DIRTY) && parts.length == 3;
+		if (!clean && !dirty) {
+			throw new IOException("Unexpected journal line: " + line);
+		}
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.fileName.equals(parts[2])) {
+			removeEntry(key);
+			entry = new Entry(key, parts[2]);
+			addEntry(entry);
+		}
+		if (clean) {
+			try {
+				entry.length = Long.parseLong(parts[3]);
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("Unexpected journal line: " + line);
+			}
+			entry.format = parts[4];
+			entry.readable = true;
+			entry.currentEditor = null;
+		}
+		else {
+			// Still readable if it was before, the previous value is only replaced on commit
+			entry.currentEditor = new Editor(entry);
+		}
+	}
+
+	/**
+	 * Index the entries described by the sidecars in the shard directories, and move files from before the hashed
+	 * layout into it.  Oldest entries are treated as least recently used.  Files without a readable sidecar are deleted.
+	 */
+	private void rebuildFromDirectory() {
+		List<Entry> found = new ArrayList<Entry>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && isShardName(file.getName())) {
+					readShard(file, found);
+				}
+			}
+			for (File file : files) {
+				if (file.isFile()) {
+					adoptLegacyFile(file, found);
+				}
+			}
+		}
+
+		Collections.sort(found, new Comparator<Entry>() {
+			public int compare(Entry lhs, Entry rhs) {
+				return lhs.lastAccess < rhs.lastAccess ? -1 : (lhs.lastAccess == rhs.lastAccess ? 0 : 1);
+			}
+		});
+		for (Entry entry : found) {
+			if (entries.containsKey(entry.key)) {
+				// Two files claiming the same key, keep the newest
+				Entry older = entries.get(entry.key);
+				size -= older.length;
+				removeEntry(older.key);
+				deleteFiles(older);
+			}
+			addEntry(entry);
+			size += entry.length;
+		}
+		rewriteJournal();
+	}
+
+	private void readShard(File shard, List<Entry> found) {
+		File[] files = shard.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			String name = shard.getName() + '/' + file.getName();
+			if (name.endsWith(META_SUFFIX))
+				continue;
+			if (name.endsWith(TEMP_SUFFIX)) {
+				// Left by a write that never committed
+				file.delete();
+				continue;
+			}
+			Entry entry = readMeta(name);
+			if (entry != null && fileOf(entry).length() == entry.length) {
+				fileNames.add(entry.fileName);
+				found.add(entry);
+			}
+			else {
+				file.delete();
+				new File(directory, name + META_SUFFIX).delete();
+			}
+		}
+	}
+
+	/**
+	 * @param fileName
+	 * @return null if the sidecar is missing or unreadable
+	 */
+	private Entry readMeta(String fileName) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(directory, fileName + META_SUFFIX)), "UTF-8"), 256);
+			String line = reader.readLine();
+			String key = line != null ? decodeKey(line) : null;
+			long length = Long.parseLong(reader.readLine());
+			String format = reader.readLine();
+			long lastAccess = Long.parseLong(reader.readLine());
+			if (!isValidKey(key) || format == null)
+				return null;
+			Entry entry = new Entry(key, fileName);
+			entry.length = length;
+			entry.format = format;
+			entry.lastAccess = lastAccess;
+			entry.readable = true;
+			return entry;
+		}
+		catch (IOException e) { }
+		catch (NumberFormatException e) { }
+		finally {
+			IOUtils.safeClose(reader);
+		}
+		return null;
+	}
+
+	/**
+	 * Move a file named after its key into the hashed layout
+	 */
+	private void adoptLegacyFile(File file, List<Entry> found) {
+		if (file.getName().equals(JOURNAL_FILE) || file.getName().equals(JOURNAL_FILE_TEMP))
+			return;
+		Entry entry = new Entry(file.getName(), newFileName(file.getName()));
+		entry.length = file.length();
+		entry.lastAccess = file.lastModified();
+		entry.readable = true;
+		File target = fileOf(entry);
+		target.getParentFile().mkdirs();
+		if (file.renameTo(target)) {
+			entry.format = sniffFormat(target);
+			if (writeMeta(entry)) {
+				// Claim the name so a colliding key gets another one
+				fileNames.add(entry.fileName);
+				found.add(entry);
+				return;
+			}
+			target.delete();
+		}
+		file.delete();
+	}
+
+	private boolean writeMeta(Entry entry) {
+		Writer writer = null;
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(metaFileOf(entry)), "UTF-8");
+			writer.write(encodeKey(entry.key) + '\n' + entry.length + '\n' + entry.format + '\n' + entry.lastAccess + '\n');
+			writer.close();
+			writer = null;
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+		finally {
+			IOUtils.safeClose(writer);
+		}
+	}
+
+	/**
+	 * Recognize the common image formats from the first bytes of a file
+	 * @param file
+	 * @return jpeg, png, gif, webp or unknown
+	 */
+	static String sniffFormat(File file) {
+		byte[] header = new byte[12];
+		int count = 0;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			int read;
+			while (count < header.length && (read = in.read(header, count, header.length - count)) != -1) {
+				count += read;
+			}
+		}
+		catch (IOException e) { }
+		finally {
+			IOUtils.safeClose(in);
+		}
+
+		if (count >= 3 && (header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xd8 && (header[2] & 0xff) == 0xff)
+			return "jpeg";
+		else if (count >= 4 && (header[0] & 0xff) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G')
+			return "png";
+		else if (count >= 4 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8')
+			return "gif";
+		else if (count >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+				&& header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P')
+			return "webp";
+		else
+			return "unknown";
+	}
+
+	/**
+	 * Replace the journal with one record per entry, in least recently used order
+	 */
+	private void rewriteJournal() {
+		closeJournal();
+		File tempFile = new File(directory, JOURNAL_FILE_TEMP);
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+			writer.write(MAGIC);
+			writer.write('\n');
+			writer.write(VERSION);
+			writer.write('\n');
+			writer.write('\n');
+			for (Entry entry : entries.values()) {
+				if (entry.readable) {
+					writer.write(CLEAN + ' ' + encodeKey(entry.key) + ' ' + entry.fileName + ' ' + entry.length + ' ' + entry.format + '\n');
+				}
+				if (entry.currentEditor != null) {
+					writer.write(DIRTY + ' ' + encodeKey(entry.key) + ' ' + entry.fileName + '\n');
+				}
+			}
+			writer.close();
+			writer = null;
+			if (!tempFile.renameTo(journalFile)) {
+				journalFile.delete();
+				tempFile.renameTo(journalFile);
+			}
+			journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+			redundantRecords = 0;
+		}
+		catch (IOException e) {
+			// Carry on without a journal, the directory is scanned again next time the cache opens
+			journalFile.delete();
+		}
+		finally {
+			IOUtils.safeClose(writer);
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (redundantRecords >= COMPACT_THRESHOLD && redundantRecords >= entries.size()) {
+			rewriteJournal();
+		}
+	}
+
+	private void appendJournal(String record, String key, String value) {
+		if (journalWriter == null)
+			return;
+		try {
+			journalWriter.write(record);
+			journalWriter.write(' ');
+			journalWriter.write(encodeKey(key));
+			if (value != null) {
+				journalWriter.write(' ');
+				journalWriter.write(value);
+			}
+			journalWriter.write('\n');
+		}
+		catch (IOException e) {
+			journalFailed();
+		}
+	}
+
+	private void flushJournal() {
+		if (journalWriter == null)
+			return;
+		try {
+			journalWriter.flush();
+		}
+		catch (IOException e) {
+			journalFailed();
+		}
+	}
+
+	/**
+	 * A journal that missed a record can't be trusted, drop it so the next open rebuilds the index
+	 */
+	private void journalFailed() {
+		closeJournal();
+		journalFile.delete();
+	}
+
+	private void closeJournal() {
+		IOUtils.safeClose(journalWriter);
+		journalWriter = null;
+	}
+
+	private void trimToSize() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > maxBytes && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.readable && entry.currentEditor == null) {
+				deleteFiles(entry);
+				size -= entry.length;
+				iterator.remove();
+				fileNames.remove(entry.fileName);
+				redundantRecords++;
+				evictionCount++;
+				appendJournal(REMOVE, entry.key, null);
+			}
+		}
+	}
+
+	/**
+	 * The rename and the sidecar are written without holding the lock, so a commit doesn't stall
+	 * reads of other keys.  The entry keeps its editor meanwhile, which keeps it from being edited,
+	 * removed or evicted, and its file name stays reserved in case the cache is cleared.
+	 */
+	private void completeEdit(Editor editor, boolean success) {
+		Entry entry = editor.entry;
+		File file = fileOf(entry);
+		File tempFile = tempFileOf(entry);
+		synchronized (this) {
+			if (entry.currentEditor != editor) {
+				return;
+			}
+			if (entries.get(entry.key) != entry) {
+				// Cleared or closed while the edit was in progress
+				entry.currentEditor = null;
+				tempFile.delete();
+				return;
+			}
+			committing.add(entry.fileName);
+		}
+
+		Entry written = null;
+		boolean replaced = false;
+		if (success && tempFile.exists()) {
+			written = new Entry(entry.key, entry.fileName);
+			written.length = tempFile.length();
+			written.format = sniffFormat(tempFile);
+			written.lastAccess = System.currentTimeMillis();
+			written.readable = true;
+			// Replaces the previous value in one step, readers that already opened it keep reading it
+			replaced = tempFile.renameTo(file);
+			if (!replaced || !writeMeta(written)) {
+				written = null;
+			}
+		}
+		tempFile.delete();
+
+		synchronized (this) {
+			committing.remove(entry.fileName);
+			entry.currentEditor = null;
+			if (entries.get(entry.key) != entry) {
+				// Cleared or closed while committing, the file is only ours if the reopened cache doesn't know it
+				if (replaced && !fileNames.contains(entry.fileName)) {
+					deleteFiles(entry);
+				}
+				return;
+			}
+
+			if (written != null) {
+				if (entry.readable) {
+					size -= entry.length;
+				}
+				entry.length = written.length;
+				entry.format = written.format;
+				entry.lastAccess = written.lastAccess;
+				entry.readable = true;
+				size += entry.length;
+				appendJournal(CLEAN, entry.key, entry.fileName + ' ' + entry.length + ' ' + entry.format);
+			}
+			else if (entry.readable && !replaced) {
+				// Nothing replaced, the previous value is still good
+				appendJournal(CLEAN, entry.key, entry.fileName + ' ' + entry.length + ' ' + entry.format);
+			}
+			else {
+				if (entry.readable) {
+					size -= entry.length;
+				}
+				deleteFiles(entry);
+				removeEntry(entry.key);
+				appendJournal(REMOVE, entry.key, null);
+			}
+			redundantRecords++;
+			trimToSize();
+			flushJournal();
+			compactIfNeeded();
+		}
+	}
+
+	private static class Entry {
+		final String key;
+		// Relative to the cache directory, including the shard
+		final String fileName;
+		long length = 0;
+		String format = "unknown";
+		// Only known when rebuilding, the journal keeps the order while the cache is open
+		long lastAccess = 0;
+		boolean readable = false;
+		Editor currentEditor = null;
+
+		Entry(String key, String fileName) {
+			this.key = key;
+			this.fileName = fileName;
+		}
+	}
+
+	/**
+	 * Write access to a single entry.  Close the stream, then either commit or abort.  The stream
+	 * writes to a temp file, which commit renames into place.
+	 */
+	public class Editor {
+
+		private final Entry entry;
+
+		private Editor(Entry entry) {
+			this.entry = entry;
+		}
+
+		public String getKey() {
+			return entry.key;
+		}
+
+		public OutputStream newOutputStream() throws IOException {
+			File file = tempFileOf(entry);
+			boolean sync = getSyncPolicy() == SyncPolicy.Commit;
+			try {
+				return openOutputStream(file, sync);
+			}
+			catch (FileNotFoundException e) {
+				// First write to this shard, create it only when needed instead of checking on every write
+				file.getParentFile().mkdirs();
+				return openOutputStream(file, sync);
+			}
+		}
+
+		/**
+		 * Make the written file visible to readers
+		 */
+		public void commit() {
+			completeEdit(this, true);
+		}
+
+		/**
+		 * Throw away whatever was written
+		 */
+		public void abort() {
+			completeEdit(this, false);
+		}
+	}
+
+}
@@ -1,22 +1,29 @@
 package us.beacondigital.utils.image;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 
+import us.beacondigital.utils.ByteBufferPool;
 import us.beacondigital.utils.IOUtils;
+import us.beacondigital.utils.LatencyHistogram;
 import us.beacondigital.utils.ServiceLocator;
 import us.beacondigital.utils.StringUtils;
 
 import android.annotation.SuppressLint;
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.support.v4.util.LruCache;
 import android.util.Log;
 
@@ -29,6 +36,10 @@ import android.util.Log;
 public class ImageCacheHelper {
 	
 	public static String DefaultRootDirectory = "beacon_digital";
+	public static long DefaultDiskCacheSize = 50 * 1024 * 1024;
+	// One buffer per disk and decode thread, large enough for most photos
+	private static final int MaxPooledBuffers = 4;
+	private static final int MaxPooledBufferSize = 1024 * 1024;
 	
 	public enum StorageLocation {
 		ApplicationCache,
@@ -41,22 +52,50 @@ public class ImageCacheHelper {
 	String rootPath = DefaultRootDirectory;
 	String imagesPath = null;
 	MemCache memCache = null;
+	DiskCache diskCache = null;
+	BitmapPool bitmapPool = null;
+	long diskCacheSize = DefaultDiskCacheSize;
+	private boolean trimCallbacksRegistered = false;
+	// Images are read from disk into these, and decoded straight from them
+	private final ByteBufferPool bufferPool = new ByteBufferPool(MaxPooledBuffers, MaxPooledBufferSize);
+	// Milliseconds, see getCacheStats()
+	final LatencyHistogram diskReadTime = new LatencyHistogram();
+	final LatencyHistogram decodeTime = new LatencyHistogram();
+	final LatencyHistogram networkTime = new LatencyHistogram();
+	DiskCache.SyncPolicy diskSyncPolicy = DiskCache.SyncPolicy.None;
 	
 	/**
-	 * 
+	 * The memory cache gives up memory when the system asks for it through onTrimMemory, or when the heap
+	 * runs low, and grows back to the full size once the pressure has passed.
 	 * @param rootPath
 	 * @param imagesPath
-	 * @param memCacheSize Percentage of total memory class from the ActivityManager that should be used for remote image caching.
-	 * Should be between 0.0 and 0.5 or we will throw an exception
+	 * @param memCacheSize Percentage of total memory class from the ActivityManager that should be used for remote image caching,
+	 * the large memory class for apps with a large heap.  Should be between 0.0 and 0.5 or we will throw an exception
 	 */
+	@SuppressLint("NewApi")
 	public void init(String rootPath, String imagesPath, float memCacheSize) {
 		if (memCacheSize < 0f || memCacheSize > 0.5f)
 			throw new IllegalArgumentException("Cache size should be a positive float no greater than 0.5");
 		
 		init(rootPath, imagesPath);
 		ActivityManager am = (ActivityManager) ServiceLocator.getAppContext().getSystemService(Context.ACTIVITY_SERVICE);
-		int memClassBytes = am.getMemoryClass() * 1024 * 1024;
+		int memClass = am.getMemoryClass();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+				&& (ServiceLocator.getAppContext().getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0) {
+			memClass = am.getLargeMemoryClass();
+		}
+		int memClassBytes = memClass * 1024 * 1024;
+		if (memCache != null) {
+			memCache.evictAll();
+		}
 		memCache = new MemCache((int) (memClassBytes * memCacheSize));
+		// Bitmaps leaving the memory cache are reused for the next decodes instead of being collected
+		bitmapPool = BitmapPool.isSupported() ? new BitmapPool(memCache.maxSize() / 4) : null;
+		
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH && !trimCallbacksRegistered) {
+			ServiceLocator.getAppContext().registerComponentCallbacks(new TrimMemoryCallbacks());
+			trimCallbacksRegistered = true;
+		}
 	}
 	
 	/**
@@ -85,7 +124,13 @@ public class ImageCacheHelper {
 		else {
 			cacheDirectory = rootDir;
 		}
-		cacheDirectory.mkdirs();
+		
+		// The directory and its index are opened on first use, off the main thread
+		if (diskCache != null) {
+			diskCache.close();
+		}
+		diskCache = new DiskCache(cacheDirectory, diskCacheSize);
+		diskCache.setSyncPolicy(diskSyncPolicy);
 		isInitialized = true;
 	}
 	
@@ -94,25 +139,123 @@ public class ImageCacheHelper {
 		init(rootPath, imagesPath);
 	}
 	
+	/**
+	 * Maximum bytes of images kept on disk, least recently used images are deleted beyond this.
+	 * Defaults to {@link #DefaultDiskCacheSize}
+	 * @param maxBytes
+	 */
+	public void setDiskCacheSize(long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Disk cache size should be positive");
+		diskCacheSize = maxBytes;
+		if (diskCache != null) {
+			diskCache.setMaxSize(maxBytes);
+		}
+	}
+	
+	/**
+	 * Whether saved images are forced to disk before they become visible.  Saves are always atomic,
+	 * syncing only protects the latest ones against power loss at the cost of slower writes.
+	 * Defaults to {@link DiskCache.SyncPolicy#None}
+	 * @param policy
+	 */
+	public void setDiskSyncPolicy(DiskCache.SyncPolicy policy) {
+		diskSyncPolicy = policy;
+		if (diskCache != null) {
+			diskCache.setSyncPolicy(policy);
+		}
+	}
+	
+	/**
+	 * Save the original bytes of a downloaded image to disk as they arrive, without decoding
+	 * and re-encoding them, then load it with {@link #loadImage(ImageInfo)}.
+	 * @param in Stream of the encoded image, read to the end but not closed
+	 * @param info
+	 * @return false if the image couldn't be written, including when another download of it is in progress
+	 */
+	public boolean saveImage(InputStream in, ImageInfo info) {
+		try {
+			return streamToDisk(in, info);
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Same as {@link #saveImage(InputStream, ImageInfo)}, telling a failed write apart from one that never started
+	 * @return false if there is no disk cache or another download of the image is being written, nothing was read then
+	 * @throws IOException If reading or writing failed part way through the stream
+	 */
+	boolean streamToDisk(InputStream in, ImageInfo info) throws IOException {
+		if (!isInitialized)
+			return false;
+		DiskCache.Editor editor = diskCache.edit(info.toString());
+		if (editor == null)
+			return false;
+		
+		boolean success = false;
+		OutputStream out = null;
+		try {
+			out = editor.newOutputStream();
+			IOUtils.copy(in, out);
+			out.close();
+			out = null;
+			success = true;
+		}
+		finally {
+			IOUtils.safeClose(out);
+			if (success)
+				editor.commit();
+			else
+				editor.abort();
+		}
+		return true;
+	}
+	
+	/**
+	 * Save the original bytes of a downloaded image to disk
+	 * @param data
+	 * @param info
+	 * @return false if the image couldn't be written, including when another download of it is in progress
+	 */
+	public boolean saveImage(byte[] data, ImageInfo info) {
+		return isInitialized && diskCache.put(info.toString(), data);
+	}
+	
+	/**
+	 * Save a decoded image, compressing it with the format and quality of the image info.
+	 * Re-encoding costs CPU and quality, so prefer {@link #saveImage(InputStream, ImageInfo)} when the original bytes are available.
+	 * @param bitmap
+	 * @param info
+	 * @return
+	 */
 	public boolean saveImage(Bitmap bitmap, ImageInfo info) {
 		if (memCache != null)
-			memCache.put(info.toString(), bitmap);
+			memCache.cache(memoryKey(info, info.getTargetWidth(), info.getTargetHeight()), bitmap);
 		
 		boolean success = false;
-		FileOutputStream fos = null;
+		OutputStream out = null;
 
 		if(isInitialized) {
-			try
-			{
-				cacheDirectory.mkdirs(); // Juuuuuust in case
-				File imageFile = new File(cacheDirectory, info.toString());
-				fos = new FileOutputStream(imageFile);
-				success = bitmap.compress(info.getCompressFormat(), info.getQuality(), fos);
-			}
-			catch(NullPointerException ex) {}
-			catch(IOException ex) {}
-			finally {
-				IOUtils.safeClose(fos);
+			DiskCache.Editor editor = diskCache.edit(info.toString());
+			if (editor != null) {
+				try
+				{
+					out = new BufferedOutputStream(editor.newOutputStream());
+					success = bitmap.compress(info.getCompressFormat(), info.getQuality(), out);
+					out.close();
+					out = null;
+				}
+				catch(NullPointerException ex) { success = false; }
+				catch(IOException ex) { success = false; }
+				finally {
+					IOUtils.safeClose(out);
+					if (success)
+						editor.commit();
+					else
+						editor.abort();
+				}
 			}
 		}
 		
@@ -125,56 +268,166 @@ public class ImageCacheHelper {
 	 * @return
 	 */
 	public Bitmap loadFromCache(ImageInfo info) {
-		Bitmap bitmap = null;
-		if (memCache != null) {
-			bitmap = memCache.get(info.toString());
-		}
-		return bitmap;
+		return loadFromCache(info, info.getTargetWidth(), info.getTargetHeight());
+	}
+	
+	/**
+	 * Go straight to cache for the image decoded for the given size, returns null if it doesn't exist
+	 * @param info
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @return
+	 */
+	public Bitmap loadFromCache(ImageInfo info, int reqWidth, int reqHeight) {
+		return memCache != null ? getRetained(memoryKey(info, reqWidth, reqHeight)) : null;
 	}
 	
+	/**
+	 * Load an image from memory or disk, decoded for the image info's target size
+	 * @param info
+	 * @return null if the image isn't cached
+	 */
 	public Bitmap loadImage(ImageInfo info) {
+		return loadImage(info, info.getTargetWidth(), info.getTargetHeight());
+	}
+	
+	/**
+	 * Load an image from memory or disk, downsampled when decoded so it is no larger than needed
+	 * to fill the requested size.  Images are kept in memory per requested size.  The disk read and decode
+	 * happen on the calling thread, from the main thread use {@link ImageLoader#loadFromDisk} instead.
+	 * @param info
+	 * @param reqWidth Zero or less for the full width
+	 * @param reqHeight Zero or less for the full height
+	 * @return null if the image isn't cached
+	 */
+	public Bitmap loadImage(ImageInfo info, int reqWidth, int reqHeight) {
 		
-		FileInputStream fis = null;
 		Bitmap bitmap = null;
 
 		if (memCache != null) {
-			bitmap = memCache.get(info.toString());
-			if (bitmap != null) {
-				log("memCache hit. size:%d eviction:%d, hit:%d, miss:%d", memCache.size(), memCache.evictionCount(), memCache.hitCount(), memCache.missCount());
+			bitmap = getRetained(memoryKey(info, reqWidth, reqHeight));
+			if (bitmap != null)
 				return bitmap;
-			}
-			else {
-				log("memCache miss. size:%d, max:%d, evictions:%d", memCache.size(), memCache.maxSize(), memCache.evictionCount());
-			}
 		}
 		
+		ByteBuffer data = readImageBuffer(info);
+		if (data != null) {
+			bitmap = decodeImage(info, data, reqWidth, reqHeight);
+			releaseBuffer(data);
+		}
+		
+		return bitmap;
+	}
+	
+	/**
+	 * @param info
+	 * @return Whether the original bytes of the image are on disk
+	 */
+	public boolean isOnDisk(ImageInfo info) {
+		return isInitialized && diskCache.contains(info.toString());
+	}
+	
+	/**
+	 * Download images that are likely to be shown soon to disk, in the background and behind images
+	 * that are on screen, so they are local by the time their views bind.  See {@link ImageLoader#prefetch(Collection, boolean)}
+	 * @param infos
+	 * @return Cancels the images in the batch that haven't started
+	 */
+	public ImageLoader.Request prefetch(Collection<ImageInfo> infos) {
+		return prefetch(infos, false);
+	}
+	
+	/**
+	 * Same as {@link #prefetch(Collection)}, optionally decoding the images into the memory cache
+	 * for the target size of each image info
+	 * @param infos
+	 * @param decode
+	 * @return
+	 */
+	public ImageLoader.Request prefetch(Collection<ImageInfo> infos, boolean decode) {
+		return ServiceLocator.resolve(ImageLoader.class).prefetch(infos, decode);
+	}
+	
+	/**
+	 * Read the original bytes of an image from disk, without decoding them
+	 * @param info
+	 * @return null if the image isn't on disk
+	 */
+	public byte[] readImage(ImageInfo info) {
+		ByteBuffer buffer = readImage(info, null);
+		return buffer != null ? buffer.array() : null;
+	}
+	
+	/**
+	 * Read the original bytes of an image from disk into a buffer from the pool, hand it back with
+	 * {@link #releaseBuffer(ByteBuffer)} once decoded
+	 * @param info
+	 * @return null if the image isn't on disk
+	 */
+	ByteBuffer readImageBuffer(ImageInfo info) {
+		return readImage(info, bufferPool);
+	}
+	
+	private ByteBuffer readImage(ImageInfo info, ByteBufferPool pool) {
+		ByteBuffer buffer = null;
+		
 		if(isInitialized) {
-			try
-			{
-				cacheDirectory.mkdirs(); // Juuuuuust in case
-				File imageFile = new File(cacheDirectory, info.toString());
-				fis = new FileInputStream(imageFile);
-				bitmap = BitmapFactory.decodeStream(fis);
-			}
-			catch(NullPointerException ex) {}
-			catch (FileNotFoundException e) { }
-			finally {
-				IOUtils.safeClose(fis);
-			}
+			long start = SystemClock.uptimeMillis();
+			buffer = diskCache.read(info.toString(), pool);
+			if (buffer != null)
+				diskReadTime.record(SystemClock.uptimeMillis() - start);
+		}
+		
+		return buffer;
+	}
+	
+	void releaseBuffer(ByteBuffer buffer) {
+		bufferPool.put(buffer);
+	}
+	
+	/**
+	 * Decode the bytes of an image read from disk or downloaded, downsampled for the requested size and into
+	 * a pooled bitmap when one fits, and keep the result in memory.  Bytes that can't be decoded are removed from disk.
+	 * @param info
+	 * @param data
+	 * @param reqWidth Zero or less for the full width
+	 * @param reqHeight Zero or less for the full height
+	 * @return null if the image couldn't be decoded
+	 */
+	public Bitmap decodeImage(ImageInfo info, byte[] data, int reqWidth, int reqHeight) {
+		return decodeImage(info, ByteBuffer.wrap(data), reqWidth, reqHeight);
+	}
+	
+	/**
+	 * Same as {@link #decodeImage(ImageInfo, byte[], int, int)} for the bytes between the buffer's position and limit
+	 */
+	Bitmap decodeImage(ImageInfo info, ByteBuffer data, int reqWidth, int reqHeight) {
+		long start = SystemClock.uptimeMillis();
+		Bitmap bitmap = BitmapDecoder.decodeByteArray(data.array(), data.arrayOffset() + data.position(), data.remaining(),
+				reqWidth, reqHeight, bitmapPool);
+		decodeTime.record(SystemClock.uptimeMillis() - start);
+		
+		if (bitmap == null) {
+			// Unreadable file, don't keep paying to open it
+			if (isInitialized)
+				diskCache.remove(info.toString());
+		}
+		else if (memCache != null) {
+			if (RemoteImageView.loggingEnabled)
+				log("decoded %s for %dx%d: %dx%d", info, reqWidth, reqHeight, bitmap.getWidth(), bitmap.getHeight());
+			// One reference for the cache and one for the caller, taken before the cache can evict it
+			if (bitmapPool != null)
+				bitmapPool.manage(bitmap, 2);
+			memCache.cache(memoryKey(info, reqWidth, reqHeight), bitmap);
 		}
 		
 		return bitmap;
 	}
 	
 	public void flushCache() {
-		if (cacheDirectory != null && cacheDirectory.isDirectory()) {
-			File[] files = cacheDirectory.listFiles();
-			for (File file : files) {
-				if (file.isFile()) {
-					boolean deleted = file.delete();
-					log("flushCache::deleting %s. succeeded:%b", file.getName(), deleted);
-				}
-			}
+		if (diskCache != null) {
+			diskCache.clear();
+			log("flushCache::cleared %s", cacheDirectory);
 		}
 		flushMemoryCache();
 	}
@@ -182,32 +435,233 @@ public class ImageCacheHelper {
 	public void flushMemoryCache() {
 		if (memCache != null)
 			memCache.evictAll();
+		if (bitmapPool != null)
+			bitmapPool.clear();
 	}
 	
+	/**
+	 * Halve the memory cache, typically after running out of memory.  It grows back once memory is available again.
+	 */
 	public void trimMemoryCache() {
 		if (memCache != null) {
-			memCache.trimToSize(memCache.maxSize() / 2);
+			memCache.shrinkTo(memCache.budget() / 2);
+		}
+	}
+	
+	/**
+	 * Give up memory in proportion to the pressure the system reports.  Called automatically on Ice Cream Sandwich
+	 * and later, apps can forward their own callbacks on earlier versions.
+	 * @param level One of the ComponentCallbacks2.TRIM_MEMORY_* levels
+	 */
+	public void onTrimMemory(int level) {
+		if (memCache == null)
+			return;
+		
+		int maxSize = memCache.maxSize();
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+			// Next in line to be killed, keep nothing
+			flushMemoryCache();
+			memCache.shrinkTo(maxSize / 8);
+		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+			memCache.shrinkTo(maxSize / 4);
+		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+			memCache.shrinkTo(maxSize / 2);
+		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+			memCache.shrinkTo(maxSize / 4);
 		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+			memCache.shrinkTo(maxSize / 2);
+		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+			memCache.shrinkTo(maxSize * 3 / 4);
+		}
+		log("onTrimMemory %d: budget %d of %d, size %d", level, memCache.budget(), maxSize, memCache.size());
+	}
+	
+	/**
+	 * Counters, sizes and timings of the memory, pool and disk caches, for tuning their sizes.  Keeping the
+	 * numbers up to date doesn't allocate, only taking the snapshot does.
+	 * @return
+	 */
+	public CacheStats getCacheStats() {
+		return new CacheStats(this);
+	}
+	
+	/**
+	 * Time a download took, for {@link CacheStats#getNetworkTime()}
+	 */
+	void recordNetworkTime(long millis) {
+		networkTime.record(millis);
+	}
+	
+	/**
+	 * @return Bytes the memory cache may hold right now, at most {@link #getMemoryCacheMaxSize()}
+	 */
+	public int getMemoryCacheBudget() { return memCache != null ? memCache.budget() : 0; }
+	
+	/**
+	 * @return Bytes the memory cache grows back to without memory pressure
+	 */
+	public int getMemoryCacheMaxSize() { return memCache != null ? memCache.maxSize() : 0; }
+	
+	/**
+	 * @return Bytes of bitmaps in the memory cache
+	 */
+	public int getMemoryCacheSize() { return memCache != null ? memCache.size() : 0; }
+	
+	/**
+	 * Bitmaps returned by {@link #loadImage(ImageInfo)} and {@link #loadFromCache(ImageInfo)} are never
+	 * reused while they might be displayed.  Release them once they are no longer shown so their memory
+	 * can be reused for other images, bitmaps that are never released are simply garbage collected.
+	 * @param bitmap
+	 */
+	public void releaseBitmap(Bitmap bitmap) {
+		if (bitmapPool != null)
+			bitmapPool.release(bitmap);
 	}
 	
+	/**
+	 * @return null without a memory cache, or before Honeycomb
+	 */
+	public BitmapPool getBitmapPool() { return bitmapPool; }
+	
 	public File getCacheDirectory() { return cacheDirectory; }
+	public DiskCache getDiskCache() { return diskCache; }
+	
+	/**
+	 * The same image decoded for different sizes is kept separately in memory, on disk there is only the original
+	 */
+	static String memoryKey(ImageInfo info, int reqWidth, int reqHeight) {
+		return info.getSizedKey(reqWidth, reqHeight);
+	}
+	
+	/**
+	 * Look a bitmap up in the memory cache and retain it for the caller.  Eviction releases the cache's reference
+	 * under the pool's lock, so holding it here keeps the bitmap from being pooled between the two steps.
+	 */
+	private Bitmap getRetained(String key) {
+		if (bitmapPool == null)
+			return memCache.get(key);
+		synchronized (bitmapPool) {
+			Bitmap bitmap = memCache.get(key);
+			bitmapPool.retain(bitmap);
+			return bitmap;
+		}
+	}
 	
-	private class MemCache extends LruCache<String, Bitmap> {
+	void retainBitmap(Bitmap bitmap) {
+		if (bitmapPool != null)
+			bitmapPool.retain(bitmap);
+	}
+	
+	/**
+	 * LRU cache of decoded bitmaps.  The support LruCache can't be resized, so it is created at the full size and
+	 * trimmed to a budget below that while memory is short.  The budget steps back up once no pressure has been
+	 * seen for a while and the heap has room for it.
+	 */
+	class MemCache extends LruCache<String, Bitmap> {
 
+		// Wait this long after the last sign of pressure before growing, then grow a step at a time
+		private static final long GROW_DELAY = 30 * 1000;
+		private static final int GROW_STEPS = 4;
+		
+		private final Object budgetLock = new Object();
+		private int budget;
+		private long lastAdjusted = 0;
+		
 		public MemCache(int maxSizeBytes) {
 			super(maxSizeBytes);
+			budget = maxSizeBytes;
 		}
 		
-		@SuppressLint("NewApi")
-		@Override
-		protected int sizeOf(String key, Bitmap value) {
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
-				return value.getByteCount();
+		int budget() {
+			synchronized (budgetLock) {
+				return budget;
+			}
+		}
+		
+		/**
+		 * Lower the budget, never raising it, and drop the least recently used bitmaps beyond it
+		 */
+		void shrinkTo(int bytes) {
+			int newBudget;
+			synchronized (budgetLock) {
+				budget = Math.max(Math.min(budget, bytes), 0);
+				lastAdjusted = SystemClock.elapsedRealtime();
+				newBudget = budget;
+			}
+			trimToSize(newBudget);
+			if (bitmapPool != null)
+				bitmapPool.setMaxSize(newBudget / 4);
+		}
+		
+		/**
+		 * Shrink a step when the heap is nearly full, grow a step when pressure has passed and there is room for it
+		 */
+		private void adjustBudget() {
+			int step = maxSize() / GROW_STEPS;
+			Runtime runtime = Runtime.getRuntime();
+			long headroom = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+			if (headroom < step / 2 && budget() > step) {
+				shrinkTo(budget() - step);
+				return;
 			}
-			else {
-				return value.getRowBytes() * value.getHeight();
+			
+			int newBudget;
+			synchronized (budgetLock) {
+				long now = SystemClock.elapsedRealtime();
+				if (budget >= maxSize() || now - lastAdjusted < GROW_DELAY)
+					return;
+				lastAdjusted = now;
+				if (headroom < step * 2)
+					return;
+				budget = Math.min(budget + step, maxSize());
+				newBudget = budget;
 			}
+			if (bitmapPool != null)
+				bitmapPool.setMaxSize(newBudget / 4);
+		}
+		
+		/**
+		 * Add a bitmap within the budget, put() itself is final and only keeps to the full size
+		 */
+		Bitmap cache(String key, Bitmap value) {
+			Bitmap previous = put(key, value);
+			adjustBudget();
+			int budget = budget();
+			if (size() > budget)
+				trimToSize(budget);
+			return previous;
+		}
+		
+		@Override
+		protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+			// Drop the cache's reference, the bitmap is pooled once it isn't displayed either
+			if (bitmapPool != null && oldValue != newValue)
+				bitmapPool.release(oldValue);
+		}
+		
+		@Override
+		protected int sizeOf(String key, Bitmap value) {
+			return BitmapPool.byteCountOf(value);
+		}
+	}
+	
+	@SuppressLint("NewApi")
+	private class TrimMemoryCallbacks implements ComponentCallbacks2 {
+		
+		public void onTrimMemory(int level) {
+			ImageCacheHelper.this.onTrimMemory(level);
 		}
+		
+		public void onLowMemory() {
+			ImageCacheHelper.this.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+		}
+		
+		public void onConfigurationChanged(Configuration newConfig) { }
 	}
 	
 	/**
@@ -1,7 +1,9 @@
 package us.beacondigital.utils.image;
 
+import java.util.Locale;
+import java.util.regex.Pattern;
+
 import us.beacondigital.utils.StringUtils;
-import android.annotation.SuppressLint;
 import android.graphics.Bitmap.CompressFormat;
 
 /**
@@ -15,6 +17,7 @@ import android.graphics.Bitmap.CompressFormat;
 public class ImageInfo {
 	
 	private static final int DefaultQuality = 75;
+	private static final String ThumbnailSuffix = "thumb";
 	
 	public enum UniqueIdType {
 		LongInt,
@@ -36,11 +39,13 @@ public class ImageInfo {
 	public static class ImageDescriptor {
 		
 		private static final long DefaultNumericId = 0;
+		private static final Pattern Whitespace = Pattern.compile("\\s+");
 		
 		private long numericId = Long.MIN_VALUE;
 		private String textId = null;
 		private UniqueIdType idType = UniqueIdType.LongInt;
 		private String imageDescription;
+		private String name = null;
 		
 		/**
 		 * Creates a description of the image to be saved from a numeric id and one or more
@@ -99,11 +104,25 @@ public class ImageInfo {
 			for (String description : descriptions) {
 				if (sb.length() > 0)
 					sb.append("_");
-				sb.append(description.replaceAll("\\s+", "_"));
+				sb.append(Whitespace.matcher(description).replaceAll("_"));
 			}
 			return sb.toString();
 		}
 
+		/**
+		 * Same id with a suffix on the description, for another version of the same image such as its thumbnail
+		 * @param suffix
+		 * @return
+		 */
+		ImageDescriptor variant(String suffix) {
+			ImageDescriptor variant = new ImageDescriptor();
+			variant.idType = idType;
+			variant.numericId = numericId;
+			variant.textId = textId;
+			variant.imageDescription = imageDescription + "_" + suffix;
+			return variant;
+		}
+
 		public boolean isValid() {
 			boolean isValid = true;
 			isValid &= !StringUtils.isNullOrEmpty(imageDescription);
@@ -118,10 +137,14 @@ public class ImageInfo {
 			return isValid;
 		}
 		
+		/**
+		 * Built once, descriptors can't change after they are created
+		 */
 		public String toString() {
-			return String.format("%s_%s",
-					imageDescription,
-					idType == UniqueIdType.LongInt ? String.valueOf(numericId) : textId);
+			if (name == null) {
+				name = imageDescription + "_" + (idType == UniqueIdType.LongInt ? String.valueOf(numericId) : textId);
+			}
+			return name;
 		}
 	}
 	
@@ -130,6 +153,14 @@ public class ImageInfo {
 	private Extension ext = Extension.None;
 	private Extension defaultExt = Extension.None;
 	private int quality = DefaultQuality;
+	private int targetWidth = 0;
+	private int targetHeight = 0;
+	private ImageInfo thumbnail = null;
+	// The cache key and its case insensitive form for equals and hashCode, built on first use
+	private String key = null;
+	private String normalizedKey = null;
+	// The memory cache key for the size last decoded for, so repeated lookups don't build it again
+	private SizedKey sizedKey = null;
 	
 	public ImageInfo(ImageDescriptor descriptor, String url) {
 		this.descriptor = descriptor;
@@ -176,24 +207,95 @@ public class ImageInfo {
 		return extension;
 	}
 
-	@SuppressLint("DefaultLocale")
+	/**
+	 * The cache key for the image, also its file name on disk
+	 */
 	@Override
 	public String toString() {
-		String extension = null;
-		if(ext == Extension.None && defaultExt != Extension.None)
-			extension = defaultExt.name().toLowerCase();
-		else
-			extension = ext.name().toLowerCase();
-		
-		return String.format("%s.%s",
-				descriptor.toString(),
-				extension);
+		if (key == null) {
+			String extension = null;
+			if(ext == Extension.None && defaultExt != Extension.None)
+				extension = defaultExt.name().toLowerCase(Locale.US);
+			else
+				extension = ext.name().toLowerCase(Locale.US);
+			
+			key = descriptor.toString() + "." + extension;
+		}
+		return key;
+	}
+	
+	/**
+	 * The cache key with the decoded size appended, see {@link ImageCacheHelper#memoryKey(ImageInfo, int, int)}
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	String getSizedKey(int width, int height) {
+		width = Math.max(width, 0);
+		height = Math.max(height, 0);
+		if (width == 0 && height == 0)
+			return toString();
+		// Read once, another thread may replace it for a different size
+		SizedKey last = sizedKey;
+		if (last == null || last.width != width || last.height != height) {
+			last = new SizedKey(width, height, toString() + "@" + width + "x" + height);
+			sizedKey = last;
+		}
+		return last.key;
+	}
+	
+	private String getNormalizedKey() {
+		if (normalizedKey == null) {
+			normalizedKey = toString().toLowerCase(Locale.US);
+		}
+		return normalizedKey;
 	}
 	
 	public String getUrl() { return url; }
 	public ImageDescriptor getDescriptor() { return descriptor; }
 	public void setQuality(int quality) { this.quality = quality; }
 	public int getQuality() { return quality; }
+	
+	/**
+	 * Decode the image no larger than needed to fill this size, instead of the size of the view showing it.
+	 * Zero leaves a dimension unconstrained, and both zero (the default) lets the view decide.
+	 * @param width
+	 * @param height
+	 */
+	public void setTargetSize(int width, int height) {
+		targetWidth = width;
+		targetHeight = height;
+	}
+	public int getTargetWidth() { return targetWidth; }
+	public int getTargetHeight() { return targetHeight; }
+	public boolean hasTargetSize() { return targetWidth > 0 || targetHeight > 0; }
+	
+	/**
+	 * A low resolution version of the image at its own URL, shown while the full image loads.
+	 * It is cached separately, under this image's key with "_thumb" added to the description.
+	 * @param url
+	 */
+	public void setThumbnailUrl(String url) {
+		thumbnail = new ImageInfo(descriptor.variant(ThumbnailSuffix), url, defaultExt);
+	}
+	
+	/**
+	 * Show this image decoded at a small size while it is decoded at full size, typically because a list
+	 * already has it in memory at that size.  Both come from the same file, so the small one is never
+	 * downloaded on its own, only read from memory or disk.
+	 * @param width
+	 * @param height
+	 */
+	public void setThumbnailSize(int width, int height) {
+		thumbnail = new ImageInfo(descriptor, url, defaultExt);
+		thumbnail.setTargetSize(width, height);
+	}
+	
+	/**
+	 * @return The image to show first, or null if there is none
+	 */
+	public ImageInfo getThumbnail() { return thumbnail; }
+	public boolean hasThumbnail() { return thumbnail != null; }
 
 	public CompressFormat getCompressFormat() {
 		CompressFormat format = CompressFormat.JPEG;
@@ -202,13 +304,35 @@ public class ImageInfo {
 		return format;
 	}
 	
+	/**
+	 * Image infos with the same cache key, ignoring case, are the same image
+	 */
 	@Override
 	public boolean equals(Object o) {
-		if (o instanceof ImageInfo) {
-			return toString().equalsIgnoreCase(((ImageInfo) o).toString());
-		}
+		if (o == this)
+			return true;
+		else if (o instanceof ImageInfo)
+			return getNormalizedKey().equals(((ImageInfo) o).getNormalizedKey());
 		else
-			return super.equals(0);
+			return false;
+	}
+	
+	@Override
+	public int hashCode() {
+		return getNormalizedKey().hashCode();
+	}
+
+	private static class SizedKey {
+		
+		final int width;
+		final int height;
+		final String key;
+		
+		SizedKey(int width, int height, String key) {
+			this.width = width;
+			this.height = height;
+			this.key = key;
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,705 @@
+package us.beacondigital.utils.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+
+import us.beacondigital.utils.IOUtils;
+import us.beacondigital.utils.ServiceLocator;
+import us.beacondigital.utils.net.RequestProfile;
+import us.beacondigital.utils.net.ResponseStreamHandler;
+import us.beacondigital.utils.net.WebRequest;
+import us.beacondigital.utils.net.WebRequest.AuthType;
+import us.beacondigital.utils.net.WebRequest.Verb;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Loads images for {@link RemoteImageView} and anyone else through separate bounded thread pools for
+ * disk reads, downloads and decoding, so a slow download never holds up images that are already on disk
+ * and decoding never waits behind I/O.
+ * <p>
+ * Each pool works through a priority queue: requests for visible images come before the rest, and newer
+ * requests come before older ones so the images on screen after fast scrolling load first.  Cancelled
+ * requests, for example from a view that was recycled or detached, are dropped when they reach the front.
+ * <p>
+ * Loads of the same image for the same size share one job, so it is read, downloaded and decoded once
+ * however many views ask for it, and every requester gets the same bitmap.  Loads of the same image for
+ * different sizes share its download when it is saved to disk: one job downloads it and the others wait,
+ * then decode it from disk.
+ * <p>
+ * Resolve the shared instance with {@link ServiceLocator#resolve(Class)}.
+ * @author Rich
+ *
+ */
+public class ImageLoader {
+
+	private static final int DEFAULT_DISK_THREADS = 2;
+	private static final int DEFAULT_NETWORK_THREADS = 4;
+	private static final int DEFAULT_DECODE_THREADS = 2;
+	private static final String DOWNLOAD_SUFFIX = "#download";
+
+	/**
+	 * Receives the result of a load on the main thread
+	 */
+	public interface Callback {
+		/**
+		 * @param info
+		 * @param bitmap Retained for the callback, see {@link ImageCacheHelper#releaseBitmap(Bitmap)}
+		 */
+		void onImageLoaded(ImageInfo info, Bitmap bitmap);
+		void onImageFailed(ImageInfo info);
+	}
+
+	/**
+	 * A load that can be cancelled until its result is delivered
+	 */
+	public interface Request {
+		void cancel();
+		boolean isCancelled();
+	}
+
+	private enum Stage {
+		Disk,
+		Network,
+		Decode
+	}
+
+	private final AtomicLong sequence = new AtomicLong();
+	// Jobs that haven't delivered yet, by memory cache key, and the jobs downloading images to disk,
+	// by download key.  Also the lock for attaching to a job.
+	private final Map<String, Job> inFlight = new HashMap<String, Job>();
+	private Handler mainHandler = null;
+	private ThreadPoolExecutor diskExecutor = null;
+	private ThreadPoolExecutor networkExecutor = null;
+	private ThreadPoolExecutor decodeExecutor = null;
+	private int diskThreads = DEFAULT_DISK_THREADS;
+	private int networkThreads = DEFAULT_NETWORK_THREADS;
+	private int decodeThreads = DEFAULT_DECODE_THREADS;
+
+	/**
+	 * Size the thread pools, including ones already running
+	 * @param disk Disk reads at once
+	 * @param network Downloads at once
+	 * @param decode Decodes at once
+	 */
+	public synchronized void setLimits(int disk, int network, int decode) {
+		if (disk > 0 && network > 0 && decode > 0) {
+			diskThreads = disk;
+			networkThreads = network;
+			decodeThreads = decode;
+			resize(diskExecutor, disk);
+			resize(networkExecutor, network);
+			resize(decodeExecutor, decode);
+		}
+	}
+
+	/**
+	 * Only the number of downloads at once
+	 * @param network
+	 */
+	public synchronized void setMaxDownloads(int network) {
+		setLimits(diskThreads, network, decodeThreads);
+	}
+
+	/**
+	 * Load an image from disk, or download it when it isn't there, decoded for the given size.
+	 * Check the memory cache with {@link ImageCacheHelper#loadFromCache(ImageInfo, int, int)} first,
+	 * this always goes through the thread pools.
+	 * @param info
+	 * @param width Width to decode for, zero or less for the full width
+	 * @param height Height to decode for, zero or less for the full height
+	 * @param cacheToFile Whether a downloaded image should be saved to disk
+	 * @param visible Whether the image is on screen, visible images are loaded first
+	 * @param callback
+	 * @return
+	 */
+	public Request load(ImageInfo info, int width, int height, boolean cacheToFile, boolean visible, Callback callback) {
+		return enqueue(ImageCacheHelper.memoryKey(info, width, height), info, width, height, cacheToFile, visible, true, true, callback);
+	}
+	
+	/**
+	 * Load an image from disk only, decoded for the given size, typically once something else has downloaded it.
+	 * The read and decode happen on the disk and decode pools, the callback's onImageFailed is called if the image isn't on disk.
+	 * @param info
+	 * @param width Width to decode for, zero or less for the full width
+	 * @param height Height to decode for, zero or less for the full height
+	 * @param visible Whether the image is on screen, visible images are loaded first
+	 * @param callback
+	 * @return
+	 */
+	public Request loadFromDisk(ImageInfo info, int width, int height, boolean visible, Callback callback) {
+		return enqueue(ImageCacheHelper.memoryKey(info, width, height), info, width, height, false, visible, true, false, callback);
+	}
+	
+	/**
+	 * Warm the caches with images that are likely to be shown soon, for example the next page of a list.
+	 * Prefetches only run when no visible image is waiting for the same pool.  A load of one of the images
+	 * while its prefetch is in flight doesn't fetch it again: it joins a decoding prefetch of the same size,
+	 * or waits for a download-only prefetch to finish and then reads the image from disk.  Either way a
+	 * visible load moves the prefetch up.
+	 * @param infos Invalid image infos are skipped
+	 * @param decode Whether to also decode the images into the memory cache, for the image info's target size.
+	 * Only useful when the target size matches what the views will request.  Otherwise images are only downloaded
+	 * to disk if they aren't there already.
+	 * @return Cancels whatever part of the batch hasn't started
+	 */
+	public Request prefetch(Collection<ImageInfo> infos, boolean decode) {
+		final List<Request> batch = new ArrayList<Request>(infos.size());
+		for (ImageInfo info : infos) {
+			if (!ImageInfoValidator.isValid(info))
+				continue;
+			if (decode) {
+				int width = info.getTargetWidth();
+				int height = info.getTargetHeight();
+				batch.add(enqueue(ImageCacheHelper.memoryKey(info, width, height), info, width, height, true, false, true, true, null));
+			}
+			else {
+				// Not shared with loads that decode, they wouldn't get a bitmap
+				batch.add(enqueue(downloadKey(info), info, 0, 0, true, false, false, true, null));
+			}
+		}
+		
+		return new Request() {
+			private volatile boolean cancelled = false;
+			
+			public void cancel() {
+				cancelled = true;
+				for (Request request : batch) {
+					request.cancel();
+				}
+			}
+			
+			public boolean isCancelled() {
+				return cancelled;
+			}
+		};
+	}
+	
+	private Request enqueue(String key, ImageInfo info, int width, int height, boolean cacheToFile, boolean visible, boolean decode,
+			boolean download, Callback callback) {
+		Attachment attachment = new Attachment(callback);
+		Job job;
+		Job downloader = null;
+		boolean started = false;
+		synchronized (inFlight) {
+			job = inFlight.get(key);
+			if (job == null) {
+				job = new Job(key, info, width, height, cacheToFile, visible, decode, download);
+				inFlight.put(key, job);
+				downloader = decode ? inFlight.get(downloadKey(info)) : null;
+				if (downloader != null) {
+					// Start once the image has been downloaded, rather than downloading it twice
+					log("Waiting for download of %s", info);
+					downloader.followers.add(job);
+				}
+				else {
+					started = true;
+				}
+			}
+			else {
+				log("Joining load of %s, %d waiting", key, job.attachments.size());
+				if (cacheToFile)
+					job.cacheToFile = true;
+				if (download)
+					job.download = true;
+			}
+			job.attachments.add(attachment);
+		}
+		
+		if (started) {
+			getDiskExecutor().execute(job);
+		}
+		else if (downloader != null) {
+			if (visible)
+				promote(downloader);
+		}
+		else if (visible && !job.visible) {
+			promote(job);
+		}
+		return attachment;
+	}
+	
+	/**
+	 * Key under which the job downloading an image to disk is in flight, whatever size it is for
+	 */
+	private static String downloadKey(ImageInfo info) {
+		return info.toString() + DOWNLOAD_SUFFIX;
+	}
+	
+	/**
+	 * Move a job that was queued as not visible to the front, as long as it is still queued
+	 */
+	private void promote(Job job) {
+		ThreadPoolExecutor executor = executorFor(job.stage);
+		if (executor.remove(job)) {
+			job.visible = true;
+			job.order = sequence.incrementAndGet();
+			executor.execute(job);
+		}
+	}
+	
+	private ThreadPoolExecutor executorFor(Stage stage) {
+		switch (stage) {
+		case Network:
+			return getNetworkExecutor();
+		case Decode:
+			return getDecodeExecutor();
+		default:
+			return getDiskExecutor();
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getDiskExecutor() {
+		if (diskExecutor == null)
+			diskExecutor = createExecutor("disk", diskThreads);
+		return diskExecutor;
+	}
+
+	private synchronized ThreadPoolExecutor getNetworkExecutor() {
+		if (networkExecutor == null)
+			networkExecutor = createExecutor("network", networkThreads);
+		return networkExecutor;
+	}
+
+	private synchronized ThreadPoolExecutor getDecodeExecutor() {
+		if (decodeExecutor == null)
+			decodeExecutor = createExecutor("decode", decodeThreads);
+		return decodeExecutor;
+	}
+
+	private static ThreadPoolExecutor createExecutor(String name, int threads) {
+		// Only Jobs are ever queued, so the priority queue can compare them
+		return new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ImageLoaderThreadFactory(name));
+	}
+
+	private static void resize(ThreadPoolExecutor executor, int threads) {
+		if (executor != null) {
+			if (threads > executor.getMaximumPoolSize()) {
+				executor.setMaximumPoolSize(threads);
+				executor.setCorePoolSize(threads);
+			}
+			else {
+				executor.setCorePoolSize(threads);
+				executor.setMaximumPoolSize(threads);
+			}
+		}
+	}
+
+	private synchronized void post(Runnable runnable) {
+		Looper mainLooper = Looper.getMainLooper();
+		if (mainLooper == null) {
+			runnable.run();
+		}
+		else {
+			if (mainHandler == null) {
+				mainHandler = new Handler(mainLooper);
+			}
+			mainHandler.post(runnable);
+		}
+	}
+
+	/**
+	 * One requester waiting on a job
+	 */
+	private static class Attachment implements Request {
+
+		final Callback callback;
+		volatile boolean cancelled = false;
+
+		Attachment(Callback callback) {
+			this.callback = callback;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	/**
+	 * One image moving through the disk, network and decode pools for everyone waiting on it
+	 */
+	private class Job implements Runnable, Comparable<Job> {
+
+		final String key;
+		final ImageInfo info;
+		final int width;
+		final int height;
+		final boolean decode;
+		volatile boolean cacheToFile;
+		// Whether to download the image when it isn't on disk, set if any requester allows it
+		volatile boolean download;
+		// Only changed while the job isn't queued
+		volatile boolean visible;
+		volatile long order = sequence.incrementAndGet();
+		volatile Stage stage = Stage.Disk;
+		// Guarded by inFlight
+		final List<Attachment> attachments = new ArrayList<Attachment>(1);
+		// Loads waiting for this job to download the image, guarded by inFlight
+		final List<Job> followers = new ArrayList<Job>(0);
+		// Set while a decoding job is also in flight as the image's download, guarded by inFlight
+		String downloadKey = null;
+		boolean fromDisk = false;
+		// Pooled when read from disk, wrapped around the downloaded bytes otherwise
+		ByteBuffer data = null;
+
+		Job(String key, ImageInfo info, int width, int height, boolean cacheToFile, boolean visible, boolean decode, boolean download) {
+			this.key = key;
+			this.decode = decode;
+			this.info = info;
+			this.width = width;
+			this.height = height;
+			this.cacheToFile = cacheToFile;
+			this.download = download;
+			this.visible = visible;
+		}
+
+		/**
+		 * Stop tracking the job once every requester has cancelled
+		 * @return true if the job should be dropped
+		 */
+		private boolean dropIfCancelled() {
+			Job[] waiting;
+			synchronized (inFlight) {
+				for (Attachment attachment : attachments) {
+					if (!attachment.cancelled)
+						return false;
+				}
+				// In the same block as the check, so nobody can attach to a job that is being dropped
+				waiting = detach();
+			}
+			start(waiting);
+			return true;
+		}
+
+		/**
+		 * Visible images first, then the most recent request first
+		 */
+		public int compareTo(Job other) {
+			if (visible != other.visible)
+				return visible ? -1 : 1;
+			return order > other.order ? -1 : (order < other.order ? 1 : 0);
+		}
+
+		public void run() {
+			if (dropIfCancelled()) {
+				log("Dropping cancelled load of %s", key);
+				return;
+			}
+
+			ImageCacheHelper imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
+			try {
+				switch (stage) {
+				case Disk:
+					if (!decode) {
+						// Only making sure it is on disk
+						if (imageCacheHelper.isOnDisk(info))
+							finish();
+						else
+							next(Stage.Network);
+						break;
+					}
+					// Another job may have decoded it since the caller checked
+					Bitmap cached = imageCacheHelper.loadFromCache(info, width, height);
+					if (cached != null) {
+						deliver(cached);
+						break;
+					}
+					data = imageCacheHelper.readImageBuffer(info);
+					fromDisk = data != null;
+					if (data != null) {
+						next(Stage.Decode);
+						break;
+					}
+					if (!download && deliverMiss())
+						break;
+					if (cacheToFile && followDownload())
+						break;
+					next(Stage.Network);
+					break;
+				case Network:
+					log("Begin download: %s", info.getUrl());
+					long start = SystemClock.uptimeMillis();
+					ByteBuffer downloaded = download(imageCacheHelper);
+					imageCacheHelper.recordNetworkTime(SystemClock.uptimeMillis() - start);
+					if (downloaded == null) {
+						deliver(null);
+					}
+					else if (decode) {
+						data = downloaded;
+						// The image is on disk, the loads for other sizes can decode it from there
+						endDownload();
+						next(Stage.Decode);
+					}
+					else {
+						finish();
+					}
+					break;
+				case Decode:
+					Bitmap bitmap = imageCacheHelper.decodeImage(info, data, width, height);
+					// Decoding copied it, the buffer can take the next image
+					imageCacheHelper.releaseBuffer(data);
+					data = null;
+					if (bitmap == null && fromDisk && download) {
+						// The copy on disk was unreadable and has been removed, download it again
+						fromDisk = false;
+						next(Stage.Network);
+					}
+					else {
+						deliver(bitmap);
+					}
+					break;
+				}
+			}
+			catch (OutOfMemoryError e) {
+				log("%s caught while loading: %s", e.getClass().getSimpleName(), info);
+				log("Running GC and trimming memory cache");
+				data = null;
+				System.gc();
+				imageCacheHelper.trimMemoryCache();
+				deliver(null);
+			}
+			catch (RuntimeException e) {
+				// Still deliver, or the key would stay in flight and every later load of the image would join a dead job
+				log("%s caught while loading %s: %s", e.getClass().getSimpleName(), info, e.getMessage());
+				if (data != null) {
+					imageCacheHelper.releaseBuffer(data);
+					data = null;
+				}
+				deliver(null);
+			}
+		}
+
+		/**
+		 * Download the image.  When it is to be cached it is streamed straight to disk, keeping the original bytes
+		 * rather than decoding and compressing them again, and read back into a pooled buffer for decoding.
+		 * If the disk cache can't take it, for example while another download of it is being written, it is
+		 * buffered in memory instead.
+		 * @return The image, an empty buffer when it was only saved, or null if the download failed
+		 */
+		private ByteBuffer download(final ImageCacheHelper imageCacheHelper) {
+			if (!cacheToFile) {
+				byte[] downloaded = WebRequest.readBytes(info.getUrl(), Verb.GET, null, null, null, null, null, null, null, RequestProfile.getImageDefault());
+				return downloaded != null ? ByteBuffer.wrap(downloaded) : null;
+			}
+			return WebRequest.stream(info.getUrl(), Verb.GET, null, null, null, null, AuthType.Basic, null, null, RequestProfile.getImageDefault(),
+					new ResponseStreamHandler<ByteBuffer>() {
+						public ByteBuffer handleStream(HttpResponse response, InputStream stream) throws IOException {
+							if (stream == null)
+								return null;
+							if (imageCacheHelper.streamToDisk(stream, info))
+								return decode ? imageCacheHelper.readImageBuffer(info) : ByteBuffer.allocate(0);
+							if (!decode)
+								return ByteBuffer.allocate(0);
+							long length = response.getEntity().getContentLength();
+							ByteArrayOutputStream buffer = new ByteArrayOutputStream(length > 0 && length <= Integer.MAX_VALUE ? (int) length : 1024 * 16);
+							IOUtils.copy(stream, buffer);
+							return ByteBuffer.wrap(buffer.toByteArray());
+						}
+					});
+		}
+
+		/**
+		 * Wait for a job that is already downloading the image to disk, or become the one other sizes wait for
+		 * @return true if this job will run again from the disk stage once the download is done
+		 */
+		private boolean followDownload() {
+			Job downloader;
+			synchronized (inFlight) {
+				String key = downloadKey(info);
+				downloader = inFlight.get(key);
+				if (downloader == null) {
+					inFlight.put(key, this);
+					downloadKey = key;
+					return false;
+				}
+				downloader.followers.add(this);
+			}
+			log("Waiting for download of %s", info);
+			if (visible)
+				promote(downloader);
+			return true;
+		}
+
+		/**
+		 * Stop being the image's download and start the loads that were waiting for it
+		 */
+		private void endDownload() {
+			Job[] waiting;
+			synchronized (inFlight) {
+				if (downloadKey == null)
+					return;
+				inFlight.remove(downloadKey);
+				downloadKey = null;
+				waiting = takeFollowers();
+			}
+			start(waiting);
+		}
+
+		private void next(Stage stage) {
+			this.stage = stage;
+			executorFor(stage).execute(this);
+		}
+
+		/**
+		 * Stop tracking a job that has nothing to deliver, and start the loads that were waiting for it
+		 */
+		private void finish() {
+			Job[] waiting;
+			synchronized (inFlight) {
+				waiting = detach();
+			}
+			start(waiting);
+		}
+
+		/**
+		 * Stop tracking the job, called while holding inFlight
+		 * @return The loads that were waiting for it
+		 */
+		private Job[] detach() {
+			inFlight.remove(key);
+			if (downloadKey != null) {
+				inFlight.remove(downloadKey);
+				downloadKey = null;
+			}
+			return takeFollowers();
+		}
+
+		/**
+		 * Called while holding inFlight
+		 */
+		private Job[] takeFollowers() {
+			Job[] waiting = followers.toArray(new Job[followers.size()]);
+			followers.clear();
+			return waiting;
+		}
+
+		/**
+		 * Start the loads that were waiting for this job, outside the inFlight lock
+		 */
+		private void start(Job[] waiting) {
+			for (Job follower : waiting) {
+				getDiskExecutor().execute(follower);
+			}
+		}
+
+		/**
+		 * Hand the result to everyone still waiting.  Requests for the image from now on start a new job,
+		 * which will normally find it in the memory cache.
+		 */
+		private void deliver(Bitmap bitmap) {
+			Attachment[] waiting;
+			Job[] following;
+			synchronized (inFlight) {
+				following = detach();
+				waiting = attachments.toArray(new Attachment[attachments.size()]);
+			}
+			// A failed download leaves the loads waiting for it to try on their own
+			start(following);
+			callBack(waiting, bitmap);
+		}
+
+		/**
+		 * Report that the image isn't on disk, unless a load that allows downloading it has joined since
+		 * the job read the download flag.  Checked under the same lock as joining, so that load isn't failed.
+		 * @return false if the job should download the image after all
+		 */
+		private boolean deliverMiss() {
+			Attachment[] waiting;
+			Job[] following;
+			synchronized (inFlight) {
+				if (download)
+					return false;
+				following = detach();
+				waiting = attachments.toArray(new Attachment[attachments.size()]);
+			}
+			start(following);
+			callBack(waiting, null);
+			return true;
+		}
+
+		private void callBack(final Attachment[] waiting, final Bitmap bitmap) {
+			post(new Runnable() {
+				public void run() {
+					ImageCacheHelper imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
+					// The bitmap comes retained once, retain it again for each additional requester.
+					// Prefetches have no callback and leave the bitmap to the memory cache.
+					boolean unclaimed = true;
+					for (Attachment attachment : waiting) {
+						if (attachment.cancelled || attachment.callback == null)
+							continue;
+						if (bitmap != null) {
+							if (!unclaimed)
+								imageCacheHelper.retainBitmap(bitmap);
+							unclaimed = false;
+							attachment.callback.onImageLoaded(info, bitmap);
+						}
+						else {
+							attachment.callback.onImageFailed(info);
+						}
+					}
+					if (bitmap != null && unclaimed) {
+						imageCacheHelper.releaseBitmap(bitmap);
+					}
+				}
+			});
+		}
+	}
+
+	private static class ImageLoaderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger(1);
+		private final String name;
+
+		ImageLoaderThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					// Keep image loading from competing with the UI thread
+					android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "ImageLoader " + name + " #" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Local method for logging when statically enabled from application (off by default
+	 * @param format
+	 * @param params
+	 */
+	private void log(String format, Object... params) {
+		if(RemoteImageView.loggingEnabled) {
+			Log.v(getClass().getSimpleName(), String.format(format, params));
+		}
+	}
+
+}
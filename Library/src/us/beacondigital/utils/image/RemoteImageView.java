@@ -1,23 +1,12 @@
 package us.beacondigital.utils.image;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.concurrent.Semaphore;
-
-import org.apache.http.HttpResponse;
-import org.apache.http.impl.client.DefaultHttpClient;
-
-import us.beacondigital.utils.IOUtils;
 import us.beacondigital.utils.ServiceLocator;
-import us.beacondigital.utils.net.HttpClientProvider;
-import us.beacondigital.utils.net.WebRequest;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
-import android.os.AsyncTask;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
@@ -45,11 +34,11 @@ public class RemoteImageView extends LinearLayout {
 	
 	boolean hasImage = false;
 	boolean cacheToFile = true;
+	int targetWidth = 0;
+	int targetHeight = 0;
 	
-	static int maxDownloads = 0;
-	static Semaphore semaphore = null;
-	DiskLoadTask diskLoadTask = null;
-	RemoteLoadTask remoteLoadTask = null;
+	ImageLoader.Request loadRequest = null;
+	ImageLoader.Request thumbnailRequest = null;
 	
 	GestureDetector gestureDetector = null;
 	
@@ -135,14 +124,13 @@ public class RemoteImageView extends LinearLayout {
 	}
 	
 	/**
-	 * Allows the application to set a maximum number of simultaneous downloads
-	 * and disk reads
+	 * Allows the application to set a maximum number of simultaneous downloads.
+	 * Disk reads and decodes have their own limits, see {@link ImageLoader#setLimits(int, int, int)}
 	 * @param max
 	 */
 	public static void setMaxDownloads(int max) {
 		if (max > 0) {
-			maxDownloads = max;
-			semaphore = new Semaphore(maxDownloads, true);
+			ServiceLocator.resolve(ImageLoader.class).setMaxDownloads(max);
 		}
 	}
 	
@@ -192,10 +180,15 @@ public class RemoteImageView extends LinearLayout {
 	{
 		if(imageInfo != null)
 		{
+			// The view is showing something else now, drop any load still waiting for the old image
+			if (!imageInfo.equals(info)) {
+				cancel();
+			}
 			// remove old image
 			if(imageView.getDrawable() != null && imageView.getDrawable() == bitmapDrawable)
 			{
 				imageView.setImageDrawable(null);
+				releaseBitmap(bitmapDrawable.getBitmap());
 				bitmapDrawable = null;
 			}
 		}
@@ -225,17 +218,27 @@ public class RemoteImageView extends LinearLayout {
 	public boolean hasImage() { return hasImage; }
 	
 	/**
-	 * For async images, manually refresh when image has been saved to disk
+	 * For async images, manually refresh when image has been saved to disk.  The image is shown right away
+	 * if it is in memory, otherwise it is read and decoded on the loader's pools and shown when ready.
 	 */
 	public void refresh()
 	{
+		if(!ImageInfoValidator.isValid(imageInfo))
+			return;
+		
+		cancel();
 		ImageCacheHelper imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
-		Bitmap bmp = imageCacheHelper.loadImage(imageInfo);
+		updateTargetSize();
+		Bitmap bmp = imageCacheHelper.loadFromCache(imageInfo, targetWidth, targetHeight);
 		if(bmp != null)
 		{
 			hasImage = true;
 			refresh(bmp);
 		}
+		else {
+			ImageLoader imageLoader = ServiceLocator.resolve(ImageLoader.class);
+			loadRequest = imageLoader.loadFromDisk(imageInfo, targetWidth, targetHeight, isShown(), loaderCallback);
+		}
 	}
 
 	public void setScaleType(ScaleType scaleType)
@@ -255,35 +258,88 @@ public class RemoteImageView extends LinearLayout {
 	{
 		if(ImageInfoValidator.isValid(imageInfo))
 		{
-			if (diskLoadTask != null && !diskLoadTask.isCancelled()) {
-				diskLoadTask.cancel(true);
-			}
+			cancel();
 
 			ImageCacheHelper imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
-			Bitmap bitmap = imageCacheHelper.loadFromCache(imageInfo);
+			updateTargetSize();
+			Bitmap bitmap = imageCacheHelper.loadFromCache(imageInfo, targetWidth, targetHeight);
 			
 			if (bitmap != null) {
 				refresh(bitmap);
 			}
 			else {
-				diskLoadTask = new DiskLoadTask();
-				diskLoadTask.execute(imageInfo);
+				// Views not attached yet are about to be shown, typically from a list adapter
+				boolean visible = getWindowToken() == null || isShown();
+				ImageLoader imageLoader = ServiceLocator.resolve(ImageLoader.class);
+				loadRequest = imageLoader.load(imageInfo, targetWidth, targetHeight, cacheToFile, visible, loaderCallback);
+				// Queued after the full image so it runs first, the most recent request wins within a pool
+				requestThumbnail(imageCacheHelper, imageLoader, visible);
 			}
 		}
 	}
 	
+	/**
+	 * Show the image info's thumbnail until the full image is ready
+	 */
+	private void requestThumbnail(ImageCacheHelper imageCacheHelper, ImageLoader imageLoader, boolean visible) {
+		ImageInfo thumbnail = imageInfo.getThumbnail();
+		if (!ImageInfoValidator.isValid(thumbnail))
+			return;
+		
+		int width = thumbnail.hasTargetSize() ? thumbnail.getTargetWidth() : targetWidth;
+		int height = thumbnail.hasTargetSize() ? thumbnail.getTargetHeight() : targetHeight;
+		Bitmap bitmap = imageCacheHelper.loadFromCache(thumbnail, width, height);
+		if (bitmap != null) {
+			refresh(bitmap);
+		}
+		else if (thumbnail.equals(imageInfo)) {
+			// A smaller decode of the same file, it would only be downloaded along with the full image
+			thumbnailRequest = imageLoader.loadFromDisk(thumbnail, width, height, visible, thumbnailCallback);
+		}
+		else {
+			thumbnailRequest = imageLoader.load(thumbnail, width, height, cacheToFile, visible, thumbnailCallback);
+		}
+	}
+	
+	/**
+	 * Pick the size to decode the image for: the image info's target size if it has one, otherwise
+	 * the size of the view once laid out, otherwise the screen, so images are never decoded larger
+	 * than they can be shown
+	 */
+	private void updateTargetSize() {
+		if (imageInfo.hasTargetSize()) {
+			targetWidth = imageInfo.getTargetWidth();
+			targetHeight = imageInfo.getTargetHeight();
+		}
+		else if (imageView.getWidth() > 0 && imageView.getHeight() > 0) {
+			targetWidth = imageView.getWidth();
+			targetHeight = imageView.getHeight();
+		}
+		else {
+			DisplayMetrics metrics = getResources().getDisplayMetrics();
+			targetWidth = metrics.widthPixels;
+			targetHeight = metrics.heightPixels;
+		}
+	}
+	
 	/**
 	 * Exposes the ability to cancel the operation.
 	 * A good example usage of this is when an image is requested and the enclosing
 	 * Activity or Fragment is destroyed before the operation is finished
 	 */
 	public void cancel() {
-		log("calling cancel");
-		if (remoteLoadTask != null && !remoteLoadTask.isCancelled()) {
-			remoteLoadTask.cancel(true);
+		if (loadRequest != null) {
+			log("calling cancel");
+			loadRequest.cancel();
+			loadRequest = null;
 		}
-		if (diskLoadTask != null && !diskLoadTask.isCancelled()) {
-			diskLoadTask.cancel(true);
+		cancelThumbnail();
+	}
+	
+	private void cancelThumbnail() {
+		if (thumbnailRequest != null) {
+			thumbnailRequest.cancel();
+			thumbnailRequest = null;
 		}
 	}
 	
@@ -298,162 +354,63 @@ public class RemoteImageView extends LinearLayout {
 		}
 	}
 	
-	private class DiskLoadTask extends AsyncTask<ImageInfo, Void, Bitmap> {
+	private final ImageLoader.Callback loaderCallback = new ImageLoader.Callback() {
 		
-		ImageInfo info = null;
-
-		@Override
-		protected Bitmap doInBackground(ImageInfo... params) {
-			acquireSemaphorePermit();
-			
-			// attempt to load from local first
-			info = params[0];
-			ImageCacheHelper imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
-			Bitmap bitmap = imageCacheHelper.loadImage(info);			
-			return bitmap;
-		}
-		
-		@Override
-		protected void onCancelled(Bitmap result) {
-			releaseSemaphorePermit();
-		}
-		
-		@Override
-		protected void onPostExecute(Bitmap bitmap) {
-			if(bitmap != null)
-			{
-				if (info != null && info.equals(imageInfo)) {
-					hasImage = true;
-					refresh(bitmap);
-				}
-				releaseSemaphorePermit();
+		public void onImageLoaded(ImageInfo info, Bitmap bitmap) {
+			loadRequest = null;
+			if (info.equals(imageInfo)) {
+				cancelThumbnail();
+				hasImage = true;
+				refresh(bitmap);
 			}
-			else
-			{
-				if (remoteLoadTask != null && !remoteLoadTask.isCancelled()) {
-					remoteLoadTask.cancel(true);
-				}
-				releaseSemaphorePermit();
-				remoteLoadTask = new RemoteLoadTask();
-				remoteLoadTask.execute(info);
+			else {
+				releaseBitmap(bitmap);
 			}
 		}
 		
-	}
-	
-	private class RemoteLoadTask extends AsyncTask<ImageInfo, Void, Bitmap> {
-		
-		ImageInfo info = null;
-		String url = null;
-		DefaultHttpClient client = HttpClientProvider.get();
-		InputStream stream = null;
+		public void onImageFailed(ImageInfo info) {
+			loadRequest = null;
+			log("Failed to load: %s", info.getUrl());
+		}
+	};
 
-		@Override
-		protected Bitmap doInBackground(ImageInfo... params) {
-			acquireSemaphorePermit();
-			
-			info = params[0];
-			url = info.getUrl();
-			
-			ImageCacheHelper imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
-			Bitmap bitmap = null;
-			
-			try {
-				log("Begin download: %s", url);
-				HttpResponse response = WebRequest.execute(client, url);
-				stream = response.getEntity().getContent();
-				bitmap = BitmapFactory.decodeStream(stream);
-			}
-			catch (IllegalStateException e) {
-				log("RemoteLoadTask:%s caught while downloading: %s", e.getClass().getSimpleName(), url);
-			}
-			catch (IOException e) {
-				log("RemoteLoadTask:%s caught while downloading: %s", e.getClass().getSimpleName(), url);
-			}
-			catch (NullPointerException e) {
-				log("RemoteLoadTask:%s caught while downloading: %s", e.getClass().getSimpleName(), url);
-			}
-			catch (OutOfMemoryError e) {
-				log("RemoteLoadTask:%s caught while downloading: %s", e.getClass().getSimpleName(), url);
-				log("Running GC and trimming memory cache");
-				System.gc();
-				if (imageCacheHelper == null) {
-					imageCacheHelper = ServiceLocator.resolve(ImageCacheHelper.class);
-				}
-				imageCacheHelper.trimMemoryCache();
-				
-			}
-			finally {
-				log("Closing stream for url: %s", url);
-				IOUtils.safeClose(stream);
-				IOUtils.safeClose(client);
+	private final ImageLoader.Callback thumbnailCallback = new ImageLoader.Callback() {
+		
+		public void onImageLoaded(ImageInfo info, Bitmap bitmap) {
+			thumbnailRequest = null;
+			// Too late once the full image has been shown
+			if (loadRequest != null && imageInfo != null && info.equals(imageInfo.getThumbnail())) {
+				refresh(bitmap);
 			}
-			
-			if(bitmap != null)
-			{
-				// Save locally to SD
-				if(cacheToFile) {
-					imageCacheHelper.saveImage(bitmap, info);
-				}
-				hasImage = true;
+			else {
+				releaseBitmap(bitmap);
 			}
-			
-			return bitmap;
 		}
 		
-		@Override
-		protected void onCancelled(Bitmap result) {
-			log("onCancelled for url: %s", url);
-			releaseSemaphorePermit();
+		public void onImageFailed(ImageInfo info) {
+			thumbnailRequest = null;
 		}
-		
-		@Override
-		protected void onPostExecute(final Bitmap bitmap) {
-			if (bitmap != null) {
-				if (info != null && info.equals(imageInfo)) {
-					refresh(bitmap);
-				}
-			}
-			releaseSemaphorePermit();
-		}
-		
-	}
+	};
 
 	public void refresh(Bitmap bitmap) {
 		setBackgroundResource(0);
+		BitmapDrawable previous = bitmapDrawable;
 		bitmapDrawable = new BitmapDrawable(context.getResources(), bitmap);
 		imageView.setImageDrawable(bitmapDrawable);
 		applyAspectRatio();
-	}
-
-	/**
-	 * Acquire a semaphore permit.  Includes logging and exception swallowing
-	 */
-	public void acquireSemaphorePermit() {
-		try {
-			if (semaphore != null) {
-				long threadId = Thread.currentThread().getId();
-				log("[%d] Acquiring permit, size:%d, avail:%d", threadId, maxDownloads, semaphore.availablePermits());
-				semaphore.acquire();
-				log("[%d] Permit acquired", threadId);
-			}
+		if (previous != null) {
+			releaseBitmap(previous.getBitmap());
 		}
-		catch (Exception ex) { }
 	}
-
+	
 	/**
-	 * Releasing a semaphore permit.  Includes logging and exception swallowing
+	 * Let the cache reuse a bitmap it loaded for this view once the view no longer shows it
+	 * @param bitmap
 	 */
-	public void releaseSemaphorePermit() {
-		try {
-			if (semaphore != null) {
-				long threadId = Thread.currentThread().getId();
-				log("[%d] Releasing permit, size:%d, avail:%d", threadId, maxDownloads, semaphore.availablePermits());
-				semaphore.release();
-				log("[%d] Permit released", threadId);
-			}
+	private void releaseBitmap(Bitmap bitmap) {
+		if (bitmap != null) {
+			ServiceLocator.resolve(ImageCacheHelper.class).releaseBitmap(bitmap);
 		}
-		catch (Exception ex) { }
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package us.beacondigital.utils.net;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-host circuit breaker.  After a run of consecutive failures the circuit opens and requests
+ * to that host fail fast with a {@link CircuitOpenException} instead of adding load to a backend
+ * that is already struggling.  Once the open period has passed a single trial request is let through;
+ * if it succeeds the circuit closes again, otherwise it stays open for another period.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		Closed,
+		Open,
+		HalfOpen
+	}
+
+	private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	private static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+	private static final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private static volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private static volatile long openMillis = DEFAULT_OPEN_MILLIS;
+
+	private final String host;
+	private State state = State.Closed;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+
+	private CircuitBreaker(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * Returns the breaker for a host, creating it if needed
+	 * @param host
+	 * @return
+	 */
+	public static CircuitBreaker forHost(String host) {
+		String key = host != null ? host.toLowerCase() : "";
+		CircuitBreaker breaker = breakers.get(key);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(key);
+			breaker = breakers.putIfAbsent(key, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * Applies to all hosts
+	 * @param threshold Consecutive failures that open a circuit
+	 * @param openPeriodMillis How long a circuit stays open before a trial request is allowed
+	 */
+	public static void configure(int threshold, long openPeriodMillis) {
+		if (threshold > 0 && openPeriodMillis > 0) {
+			failureThreshold = threshold;
+			openMillis = openPeriodMillis;
+		}
+	}
+
+	/**
+	 * Close every circuit, for example when network connectivity changes
+	 */
+	public static void resetAll() {
+		breakers.clear();
+	}
+
+	/**
+	 * Check before sending a request.  In the half open state only the first caller is let through.
+	 * @return
+	 */
+	public synchronized boolean allowRequest() {
+		boolean allowed;
+		switch (state) {
+		case Open:
+			if (System.currentTimeMillis() - openedAt >= openMillis) {
+				state = State.HalfOpen;
+				allowed = true;
+			}
+			else {
+				allowed = false;
+			}
+			break;
+		case HalfOpen:
+			// A trial request is already out
+			allowed = false;
+			break;
+		default:
+			allowed = true;
+			break;
+		}
+		return allowed;
+	}
+
+	public synchronized void onSuccess() {
+		consecutiveFailures = 0;
+		state = State.Closed;
+	}
+
+	public synchronized void onFailure() {
+		consecutiveFailures++;
+		if (state == State.HalfOpen || consecutiveFailures >= failureThreshold) {
+			state = State.Open;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * The request was abandoned by its caller, so it says nothing about the host.
+	 * If it was the trial request, let the next request be the trial instead.
+	 */
+	public synchronized void onAbandoned() {
+		if (state == State.HalfOpen) {
+			state = State.Open;
+		}
+	}
+
+	public synchronized State getState() { return state; }
+	public String getHost() { return host; }
+
+}
@@ -0,0 +1,16 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} for its host is open
+ */
+public class CircuitOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String host) {
+		super("Circuit open for host " + host);
+	}
+
+}
@@ -0,0 +1,59 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Asks servers for gzip or deflate encoded responses and decodes them transparently,
+ * so callers always read identity-encoded content.  Installed on clients created by
+ * {@link HttpClientProvider} unless compression has been turned off.
+ */
+public class ContentEncodingInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+	public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+		if (!request.containsHeader(HEADER_ACCEPT_ENCODING)) {
+			request.addHeader(HEADER_ACCEPT_ENCODING, ACCEPT_ENCODING);
+		}
+	}
+
+	public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			return;
+		}
+		Header encodingHeader = entity.getContentEncoding();
+		if (encodingHeader == null) {
+			return;
+		}
+
+		String encoding = encodingHeader.getValue().trim();
+		DecompressingEntity.Encoding decoder = null;
+		if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+			decoder = DecompressingEntity.Encoding.Gzip;
+		}
+		else if ("deflate".equalsIgnoreCase(encoding)) {
+			decoder = DecompressingEntity.Encoding.Deflate;
+		}
+
+		if (decoder != null) {
+			response.setEntity(new DecompressingEntity(entity, decoder));
+			// The body handed on is decoded, so these no longer describe it
+			response.removeHeaders(HTTP.CONTENT_ENCODING);
+			response.removeHeaders(HTTP.CONTENT_LEN);
+			ContentEncodingStats.compressedResponses.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package us.beacondigital.utils.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide byte counters for compressed responses, used to measure the bandwidth
+ * saved by content encoding.  Only responses that were actually compressed are counted.
+ */
+public class ContentEncodingStats {
+
+	static final AtomicLong compressedBytes = new AtomicLong();
+	static final AtomicLong decompressedBytes = new AtomicLong();
+	static final AtomicLong compressedResponses = new AtomicLong();
+
+	/**
+	 * Bytes received over the wire for compressed responses
+	 */
+	public static long getCompressedBytes() { return compressedBytes.get(); }
+
+	/**
+	 * Bytes handed to the application after decoding compressed responses
+	 */
+	public static long getDecompressedBytes() { return decompressedBytes.get(); }
+
+	public static long getCompressedResponseCount() { return compressedResponses.get(); }
+
+	/**
+	 * Ratio of bytes saved, between 0 and 1
+	 * @return
+	 */
+	public static double getSavings() {
+		long decompressed = decompressedBytes.get();
+		return decompressed > 0 ? 1.0 - (double) compressedBytes.get() / decompressed : 0;
+	}
+
+	public static void reset() {
+		compressedBytes.set(0);
+		decompressedBytes.set(0);
+		compressedResponses.set(0);
+	}
+
+}
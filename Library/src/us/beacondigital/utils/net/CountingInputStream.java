@@ -0,0 +1,52 @@
+package us.beacondigital.utils.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stream wrapper that adds the number of bytes read to a counter
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private final AtomicLong counter;
+
+	public CountingInputStream(InputStream in, AtomicLong counter) {
+		super(in);
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			counter.incrementAndGet();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		int bytesRead = super.read(buffer, offset, count);
+		if (bytesRead > 0) {
+			counter.addAndGet(bytesRead);
+		}
+		return bytesRead;
+	}
+
+	@Override
+	public long skip(long count) throws IOException {
+		long skipped = super.skip(count);
+		if (skipped > 0) {
+			counter.addAndGet(skipped);
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+}
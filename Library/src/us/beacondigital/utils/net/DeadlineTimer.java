@@ -0,0 +1,66 @@
+package us.beacondigital.utils.net;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+
+/**
+ * Single background thread that aborts requests whose deadline has passed
+ */
+class DeadlineTimer {
+
+	private static final int LOLLIPOP = 21;
+
+	/**
+	 * Most deadlines are cancelled long before they fire, so without remove-on-cancel
+	 * the queue is purged of them this often
+	 */
+	private static final long PURGE_INTERVAL = 30 * 1000;
+
+	private static ScheduledExecutorService timer = null;
+
+	/**
+	 * Expire the handle once the delay has passed unless the returned future is cancelled first
+	 * @param handle
+	 * @param delayMillis
+	 * @return
+	 */
+	static ScheduledFuture<?> schedule(final RequestHandle handle, long delayMillis) {
+		return getTimer().schedule(new Runnable() {
+			public void run() {
+				handle.expire();
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@SuppressLint("NewApi")
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "WebRequest-DeadlineTimer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			if (Build.VERSION.SDK_INT >= LOLLIPOP) {
+				executor.setRemoveOnCancelPolicy(true);
+			}
+			else {
+				executor.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						executor.purge();
+					}
+				}, PURGE_INTERVAL, PURGE_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+			timer = executor;
+		}
+		return timer;
+	}
+
+}
@@ -0,0 +1,113 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Wraps a gzip or deflate encoded entity so its content is decoded as it is read.
+ * Compressed and decompressed byte counts are added to {@link ContentEncodingStats}.
+ */
+public class DecompressingEntity extends HttpEntityWrapper {
+
+	public enum Encoding {
+		Gzip,
+		Deflate
+	}
+
+	private static final int BUFFER_SIZE = 1024 * 8;
+
+	private final Encoding encoding;
+	private InputStream content = null;
+
+	public DecompressingEntity(HttpEntity entity, Encoding encoding) {
+		super(entity);
+		this.encoding = encoding;
+	}
+
+	/**
+	 * An empty body is passed through as is, since both decoders
+	 * fail on a stream that ends before their header
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		if (content == null) {
+			PushbackInputStream raw = new PushbackInputStream(
+					new CountingInputStream(wrappedEntity.getContent(), ContentEncodingStats.compressedBytes), 2);
+			InputStream decoded;
+			int first = raw.read();
+			if (first == -1) {
+				decoded = raw;
+			}
+			else {
+				raw.unread(first);
+				switch (encoding) {
+				case Gzip:
+					decoded = new GZIPInputStream(raw, BUFFER_SIZE);
+					break;
+				default:
+					decoded = createInflater(raw);
+					break;
+				}
+			}
+			content = new CountingInputStream(decoded, ContentEncodingStats.decompressedBytes);
+		}
+		return content;
+	}
+
+	/**
+	 * "deflate" is supposed to be zlib wrapped, but some servers send a raw deflate stream.
+	 * Peek at the first two bytes to tell them apart.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static InputStream createInflater(PushbackInputStream in) throws IOException {
+		byte[] header = new byte[2];
+		int read = 0;
+		int n;
+		while (read < 2 && (n = in.read(header, read, 2 - read)) != -1) {
+			read += n;
+		}
+		in.unread(header, 0, read);
+
+		int cmf = header[0] & 0xFF;
+		int flg = header[1] & 0xFF;
+		boolean zlibWrapped = read == 2 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+		return new InflaterInputStream(in, new Inflater(!zlibWrapped), BUFFER_SIZE);
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		InputStream in = getContent();
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) != -1) {
+				out.write(buffer, 0, bytesRead);
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return null;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+}
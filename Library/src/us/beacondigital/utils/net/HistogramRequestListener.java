@@ -0,0 +1,168 @@
+package us.beacondigital.utils.net;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.beacondigital.utils.LatencyHistogram;
+import us.beacondigital.utils.net.WebRequestResult.Failure;
+
+/**
+ * {@link RequestListener} that keeps latency histograms and counters in memory, both for all requests
+ * and per endpoint (host and path, without the query string), so slow endpoints and connection pool
+ * starvation can be spotted from a {@link #dump()}.
+ */
+public class HistogramRequestListener implements RequestListener {
+
+	private static final int DEFAULT_MAX_ENDPOINTS = 64;
+	private static final String OTHER_ENDPOINTS = "(other)";
+
+	/**
+	 * Histograms and counters for one endpoint, or for all requests
+	 */
+	public static class Stats {
+		public final LatencyHistogram totalTime = new LatencyHistogram();
+		public final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+		public final LatencyHistogram poolWaitTime = new LatencyHistogram();
+		public final LatencyHistogram dnsTime = new LatencyHistogram();
+		public final LatencyHistogram connectTime = new LatencyHistogram();
+		public final LatencyHistogram tlsTime = new LatencyHistogram();
+		public final AtomicLong requests = new AtomicLong();
+		public final AtomicLong failures = new AtomicLong();
+		public final AtomicLong timeouts = new AtomicLong();
+		public final AtomicLong retries = new AtomicLong();
+		public final AtomicLong connectionsOpened = new AtomicLong();
+		public final AtomicLong bytesReceived = new AtomicLong();
+		public final AtomicLong bytesSent = new AtomicLong();
+
+		void record(RequestMetrics metrics) {
+			requests.incrementAndGet();
+			totalTime.record(metrics.getTotalTime());
+			if (metrics.getTimeToFirstByte() >= 0)
+				timeToFirstByte.record(metrics.getTimeToFirstByte());
+			poolWaitTime.record(metrics.getPoolWaitTime());
+			if (metrics.getConnectionsOpened() > 0) {
+				connectionsOpened.addAndGet(metrics.getConnectionsOpened());
+				dnsTime.record(metrics.getDnsTime());
+				connectTime.record(metrics.getConnectTime());
+				if (metrics.getTlsTime() > 0)
+					tlsTime.record(metrics.getTlsTime());
+			}
+			if (metrics.getFailure() != Failure.None)
+				failures.incrementAndGet();
+			if (metrics.getFailure() == Failure.Timeout)
+				timeouts.incrementAndGet();
+			retries.addAndGet(metrics.getRetries());
+			bytesReceived.addAndGet(metrics.getBytesReceived());
+			if (metrics.getBytesSent() > 0)
+				bytesSent.addAndGet(metrics.getBytesSent());
+		}
+
+		void appendTo(StringBuilder sb) {
+			sb.append("  requests=").append(requests.get())
+				.append(" failures=").append(failures.get())
+				.append(" timeouts=").append(timeouts.get())
+				.append(" retries=").append(retries.get())
+				.append(" connections=").append(connectionsOpened.get())
+				.append(" in=").append(bytesReceived.get())
+				.append(" out=").append(bytesSent.get()).append('\n');
+			sb.append("  total  ").append(totalTime).append('\n');
+			sb.append("  ttfb   ").append(timeToFirstByte).append('\n');
+			sb.append("  pool   ").append(poolWaitTime).append('\n');
+			sb.append("  dns    ").append(dnsTime).append('\n');
+			sb.append("  connect").append(' ').append(connectTime).append('\n');
+			sb.append("  tls    ").append(tlsTime).append('\n');
+		}
+	}
+
+	private volatile Stats overall = new Stats();
+	private final ConcurrentMap<String, Stats> endpoints = new ConcurrentHashMap<String, Stats>();
+	private final int maxEndpoints;
+
+	public HistogramRequestListener() {
+		this(DEFAULT_MAX_ENDPOINTS);
+	}
+
+	/**
+	 * @param maxEndpoints Endpoints beyond this many are grouped together, which keeps memory bounded
+	 * when paths contain ids
+	 */
+	public HistogramRequestListener(int maxEndpoints) {
+		this.maxEndpoints = maxEndpoints;
+	}
+
+	public void onRequestStarted(RequestMetrics metrics) { }
+
+	public void onRequestFinished(RequestMetrics metrics) {
+		overall.record(metrics);
+		getStats(endpointOf(metrics.getUri())).record(metrics);
+	}
+
+	/**
+	 * Stats across all requests
+	 * @return
+	 */
+	public Stats getOverall() {
+		return overall;
+	}
+
+	/**
+	 * @param endpoint Host and path, for example "api.example.com/v1/items"
+	 * @return null if no requests were made to the endpoint
+	 */
+	public Stats getEndpoint(String endpoint) {
+		return endpoints.get(endpoint);
+	}
+
+	public List<String> getEndpoints() {
+		List<String> names = new ArrayList<String>(endpoints.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	public void reset() {
+		endpoints.clear();
+		overall = new Stats();
+	}
+
+	/**
+	 * Human readable summary of all requests followed by each endpoint, times in milliseconds
+	 * @return
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("All requests\n");
+		overall.appendTo(sb);
+		for (String endpoint : getEndpoints()) {
+			Stats stats = endpoints.get(endpoint);
+			if (stats != null) {
+				sb.append(endpoint).append('\n');
+				stats.appendTo(sb);
+			}
+		}
+		return sb.toString();
+	}
+
+	private Stats getStats(String endpoint) {
+		Stats stats = endpoints.get(endpoint);
+		if (stats == null) {
+			if (endpoints.size() >= maxEndpoints)
+				endpoint = OTHER_ENDPOINTS;
+			stats = new Stats();
+			Stats existing = endpoints.putIfAbsent(endpoint, stats);
+			if (existing != null)
+				stats = existing;
+		}
+		return stats;
+	}
+
+	private static String endpointOf(URI uri) {
+		String path = uri.getRawPath();
+		return uri.getHost() + (path != null ? path : "");
+	}
+
+}
@@ -1,13 +1,16 @@
 package us.beacondigital.utils.net;
 
+import java.util.concurrent.TimeUnit;
+
 import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.params.HttpConnectionParams;
@@ -18,7 +21,7 @@ import org.apache.http.protocol.HTTP;
 import us.beacondigital.utils.StringUtils;
 
 public class HttpClientProvider {
-	
+
 	private static String userAgent = null;
 	public static void setUserAgent(String input) {
 		userAgent = input;
@@ -26,31 +29,160 @@ public class HttpClientProvider {
 
     // Default connection and socket timeout of 60 seconds. Tweak to taste.
     private static final int SOCKET_OPERATION_TIMEOUT = 60 * 1000;
+
+    // Defaults for the shared, pooled client
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 4;
+    private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 16;
+    private static final long DEFAULT_POOL_TIMEOUT = 10 * 1000;
+    private static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30 * 1000;
+
+    private static int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private static int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+    private static long poolTimeout = DEFAULT_POOL_TIMEOUT;
+    private static long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+    private static boolean compressionEnabled = true;
+
+    private static volatile DefaultHttpClient sharedClient = null;
+    private static IdleConnectionMonitor idleConnectionMonitor = null;
+
+    /**
+     * Creates a new client with its own connection manager.  The caller owns the client
+     * and should release it with {@link us.beacondigital.utils.IOUtils#safeClose(org.apache.http.client.HttpClient) IOUtils.safeClose}
+     * when finished.  Prefer {@link #getShared()} for short lived requests so connections can be reused.
+     * @return
+     */
     public static DefaultHttpClient get()
     {
+    	HttpParams params = createParams();
+    	ClientConnectionManager conMgr = new InstrumentedConnManager(params, createSchemeRegistry());
+    	return createClient(conMgr, params);
+    }
+
+    /**
+     * Returns the process-wide client backed by a pooled connection manager so that
+     * keep-alive connections are reused between requests.  The shared client is created on first use
+     * and lives until {@link #shutdown()} is called.  Do not close it with IOUtils.safeClose; release
+     * connections by consuming or closing the response entity instead.
+     * @return
+     */
+    public static synchronized DefaultHttpClient getShared() {
+    	if (sharedClient == null) {
+        	HttpParams params = createParams();
+        	ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+        	ConnManagerParams.setMaxTotalConnections(params, maxTotalConnections);
+        	ConnManagerParams.setTimeout(params, poolTimeout);
+
+        	ClientConnectionManager conMgr = new InstrumentedConnManager(params, createSchemeRegistry());
+        	sharedClient = createClient(conMgr, params);
+
+        	idleConnectionMonitor = new IdleConnectionMonitor(conMgr, idleConnectionTimeout);
+        	idleConnectionMonitor.start();
+    	}
+    	return sharedClient;
+    }
+
+    /**
+     * Check if the client passed in is the process-wide shared client
+     * @param client
+     * @return
+     */
+    public static boolean isShared(HttpClient client) {
+    	return client != null && client == sharedClient;
+    }
+
+    /**
+     * Closes all pooled connections and stops idle connection eviction.
+     * The next call to {@link #getShared()} will create a new pool.
+     */
+    public static synchronized void shutdown() {
+    	if (idleConnectionMonitor != null) {
+    		idleConnectionMonitor.shutdown();
+    		idleConnectionMonitor = null;
+    	}
+    	if (sharedClient != null) {
+    		sharedClient.getConnectionManager().shutdown();
+    		sharedClient = null;
+    	}
+    }
+
+    /**
+     * Pool limits only take effect for a shared client created after this call,
+     * so they should be set before first use or followed by {@link #shutdown()}
+     * @param perRoute Maximum simultaneous connections to a single host
+     * @param total Maximum simultaneous connections across all hosts
+     */
+    public static synchronized void setPoolLimits(int perRoute, int total) {
+    	if (perRoute > 0 && total >= perRoute) {
+    		maxConnectionsPerRoute = perRoute;
+    		maxTotalConnections = total;
+    	}
+    }
+
+    /**
+     * Maximum time in milliseconds to wait for a free connection from the pool
+     * @param millis
+     */
+    public static synchronized void setPoolTimeout(long millis) {
+    	if (millis > 0)
+    		poolTimeout = millis;
+    }
+
+    /**
+     * Pooled connections that have been idle longer than this are closed
+     * @param millis
+     */
+    public static synchronized void setIdleConnectionTimeout(long millis) {
+    	if (millis > 0)
+    		idleConnectionTimeout = millis;
+    }
+
+    /**
+     * Turn gzip/deflate negotiation on or off for clients created after this call.
+     * Enabled by default; see {@link ContentEncodingStats} for the bytes saved.
+     * @param enabled
+     */
+    public static synchronized void setCompressionEnabled(boolean enabled) {
+    	compressionEnabled = enabled;
+    }
+
+    private static HttpParams createParams() {
     	HttpParams params = new BasicHttpParams();
-    	
+
     	HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
     	HttpProtocolParams.setContentCharset(params, HTTP.DEFAULT_CONTENT_CHARSET);
     	HttpProtocolParams.setUseExpectContinue(params, true);
-    	
+
     	HttpConnectionParams.setStaleCheckingEnabled(params, false);
         HttpConnectionParams.setConnectionTimeout(params, SOCKET_OPERATION_TIMEOUT);
         HttpConnectionParams.setSoTimeout(params, SOCKET_OPERATION_TIMEOUT);
         HttpConnectionParams.setSocketBufferSize(params, 8192);
+        return params;
+    }
 
+    private static SchemeRegistry createSchemeRegistry() {
         SchemeRegistry schReg = new SchemeRegistry();
-        schReg.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-        schReg.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-        ClientConnectionManager conMgr = new ThreadSafeClientConnManager(params, schReg);
+        // The timing factories behave like the stock ones unless a RequestListener is registered
+        schReg.register(new Scheme("http", TimingSocketFactory.getPlain(), 80));
+        schReg.register(new Scheme("https", TimingSocketFactory.getSecure(), 443));
+        return schReg;
+    }
 
+    private static DefaultHttpClient createClient(ClientConnectionManager conMgr, HttpParams params) {
         DefaultHttpClient client = new DefaultHttpClient(conMgr, params);
+        // A single immediate retry recovers from pooled connections the server already closed.
+        // Anything beyond that is left to WebRequest's RetryPolicy, which backs off between attempts.
+        client.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(1, false));
         client.getParams().setParameter(HTTP.USER_AGENT, getUserAgent());
         client.getParams().setParameter(CoreProtocolPNames.USER_AGENT, getUserAgent());
-
+        if (compressionEnabled) {
+        	ContentEncodingInterceptor interceptor = new ContentEncodingInterceptor();
+        	client.addRequestInterceptor(interceptor);
+        	client.addResponseInterceptor(interceptor);
+        }
         return client;
     }
-    
+
     /**
      * Provide a default value for user agent string if not set
      * @return
@@ -61,6 +193,44 @@ public class HttpClientProvider {
 		}
 		return userAgent;
 	}
-    
-    
-}
\ No newline at end of file
+
+	/**
+	 * Background thread that periodically closes expired and idle connections in the shared pool
+	 * so sockets the server has already dropped are not handed out to new requests
+	 */
+	private static class IdleConnectionMonitor extends Thread {
+
+		private final ClientConnectionManager connectionManager;
+		private final long idleTimeout;
+		private volatile boolean running = true;
+
+		public IdleConnectionMonitor(ClientConnectionManager connectionManager, long idleTimeout) {
+			super("HttpClientProvider-IdleConnectionMonitor");
+			this.connectionManager = connectionManager;
+			this.idleTimeout = idleTimeout;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					synchronized (this) {
+						wait(idleTimeout / 2);
+					}
+					connectionManager.closeExpiredConnections();
+					connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+				}
+			}
+			catch (InterruptedException e) { }
+		}
+
+		public void shutdown() {
+			running = false;
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+}
@@ -1,8 +1,11 @@
 package us.beacondigital.utils.net;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 
 import us.beacondigital.utils.IOUtils;
@@ -13,6 +16,8 @@ import us.beacondigital.utils.IOUtils;
  *
  */
 public class HttpUtils {
+
+	private static final int BUFFER_SIZE = 1024 * 16;
 	
 	/**
 	 * Utility method for reading a byte array from an InputStream object
@@ -25,15 +30,23 @@ public class HttpUtils {
 		InputStream is = null;
 		ByteArrayOutputStream buffer = null;
 		try {
-			is = response.getEntity().getContent();
-			buffer = new ByteArrayOutputStream();
+			HttpEntity entity = response.getEntity();
+			is = entity.getContent();
+			long contentLength = entity.getContentLength();
 
-			int bytesRead;
-			byte[] data = new byte[1024 * 16];
-			while ((bytesRead = is.read(data, 0, data.length)) != -1) {
-				  buffer.write(data, 0, bytesRead);
+			if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+				// Length is known, so read straight into the result without an intermediate copy
+				bytes = readFully(is, (int) contentLength);
+			}
+			else {
+				buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+				int bytesRead;
+				byte[] data = new byte[BUFFER_SIZE];
+				while ((bytesRead = is.read(data, 0, data.length)) != -1) {
+					  buffer.write(data, 0, bytesRead);
+				}
+				bytes = buffer.toByteArray();
 			}
-			bytes = buffer.toByteArray();
 		}
 		catch (Exception ex) { }
 		finally {
@@ -43,6 +56,19 @@ public class HttpUtils {
 		return bytes;
 	}
 
+	private static byte[] readFully(InputStream is, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		int bytesRead;
+		while (offset < length && (bytesRead = is.read(bytes, offset, length - offset)) != -1) {
+			offset += bytesRead;
+		}
+		if (offset < length) {
+			throw new EOFException("Response body shorter than Content-Length");
+		}
+		return bytes;
+	}
+
 	public static boolean isOK(HttpResponse response) {
 		return
 				response != null &&
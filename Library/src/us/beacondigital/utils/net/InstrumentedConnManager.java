@@ -0,0 +1,47 @@
+package us.beacondigital.utils.net;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Connection manager that reports how long each request waited for a pooled connection
+ * to the {@link RequestMetrics} of the request being executed on the calling thread
+ */
+class InstrumentedConnManager extends ThreadSafeClientConnManager {
+
+	InstrumentedConnManager(HttpParams params, SchemeRegistry schemeRegistry) {
+		super(params, schemeRegistry);
+	}
+
+	@Override
+	public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+		final ClientConnectionRequest request = super.requestConnection(route, state);
+		final RequestMetrics metrics = RequestMetrics.current();
+		if (metrics == null) {
+			return request;
+		}
+		return new ClientConnectionRequest() {
+			public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+				long start = System.nanoTime();
+				try {
+					return request.getConnection(timeout, unit);
+				}
+				finally {
+					metrics.addPoolWaitTime(System.nanoTime() - start);
+				}
+			}
+
+			public void abortRequest() {
+				request.abortRequest();
+			}
+		};
+	}
+
+}
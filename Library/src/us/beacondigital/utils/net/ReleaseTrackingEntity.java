@@ -0,0 +1,116 @@
+package us.beacondigital.utils.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Entity wrapper that calls back once the content has been fully read, closed or consumed,
+ * which is when the underlying connection goes back to the pool
+ */
+class ReleaseTrackingEntity extends HttpEntityWrapper {
+
+	interface ReleaseListener {
+		/**
+		 * @param bytesRead Bytes of content read by the caller before the release
+		 * @param error Exception reading the content failed with, or null
+		 */
+		void onRelease(long bytesRead, IOException error);
+	}
+
+	private final ReleaseListener listener;
+	private boolean released = false;
+	private long bytesRead = 0;
+	private IOException error = null;
+
+	ReleaseTrackingEntity(HttpEntity entity, ReleaseListener listener) {
+		super(entity);
+		this.listener = listener;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		return new FilterInputStream(wrappedEntity.getContent()) {
+			@Override
+			public int read() throws IOException {
+				try {
+					int b = super.read();
+					if (b == -1)
+						release();
+					else
+						count(1);
+					return b;
+				}
+				catch (IOException e) {
+					fail(e);
+					throw e;
+				}
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int count) throws IOException {
+				try {
+					int bytesRead = super.read(buffer, offset, count);
+					if (bytesRead == -1)
+						release();
+					else
+						count(bytesRead);
+					return bytesRead;
+				}
+				catch (IOException e) {
+					fail(e);
+					throw e;
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				}
+				finally {
+					release();
+				}
+			}
+		};
+	}
+
+	@Override
+	public void consumeContent() throws IOException {
+		try {
+			super.consumeContent();
+		}
+		finally {
+			release();
+		}
+	}
+
+	private synchronized void count(int bytes) {
+		bytesRead += bytes;
+	}
+
+	private void fail(IOException e) {
+		synchronized (this) {
+			if (error == null)
+				error = e;
+		}
+		release();
+	}
+
+	private void release() {
+		long bytes;
+		IOException failure;
+		synchronized (this) {
+			if (released)
+				return;
+			released = true;
+			bytes = bytesRead;
+			failure = error;
+		}
+		listener.onRelease(bytes, failure);
+	}
+
+}
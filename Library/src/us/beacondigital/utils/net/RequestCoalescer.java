@@ -0,0 +1,191 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.cookie.Cookie;
+
+/**
+ * Single-flight execution of identical requests.  The first caller for a key performs the request;
+ * callers that arrive while it is in flight wait for it and receive the same result.
+ * A caller that cancels only stops waiting; the shared request is aborted once nobody is left waiting for it.
+ */
+class RequestCoalescer {
+
+	/**
+	 * Performs the actual request for a flight
+	 * @param <T>
+	 */
+	interface Loader<T> {
+
+		/**
+		 * @param handle Handle the request must be attached to so it can be aborted when all callers have left
+		 */
+		T load(RequestHandle handle) throws IOException;
+
+		/**
+		 * Copy of the result for an additional caller, so callers can't see each other's changes to mutable results
+		 */
+		T share(T result);
+	}
+
+	private static final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+	/**
+	 * Build the key identifying identical requests from everything that can change the response
+	 * @param kind Distinguishes callers that read the body differently
+	 * @param request
+	 * @param cookies
+	 * @return
+	 */
+	static String createKey(String kind, HttpUriRequest request, Cookie[] cookies) {
+		StringBuilder sb = new StringBuilder(kind)
+				.append(' ').append(request.getMethod())
+				.append(' ').append(request.getURI().toString());
+		for (Header header : request.getAllHeaders()) {
+			sb.append('\n').append(header.getName()).append(':').append(header.getValue());
+		}
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				sb.append("\nCookie:").append(cookie.getName()).append('=').append(cookie.getValue());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Join the flight for this key, starting it on the calling thread if there is none
+	 * @param key
+	 * @param handle Handle of the caller, may be null.  Aborting it makes this caller leave the flight.
+	 * @param loader
+	 * @return
+	 * @throws IOException The request failed, or InterruptedIOException if this caller stopped waiting
+	 */
+	static <T> T execute(String key, RequestHandle handle, Loader<T> loader) throws IOException {
+		while (true) {
+			Flight flight = new Flight(key);
+			Flight existing = flights.putIfAbsent(key, flight);
+			if (existing == null) {
+				return run(flight, handle, loader);
+			}
+			if (existing.join()) {
+				return await(existing, handle, loader);
+			}
+			// The existing flight finished between lookup and join, so start over
+		}
+	}
+
+	private static <T> T run(final Flight flight, RequestHandle handle, Loader<T> loader) throws IOException {
+		attachLeave(flight, handle);
+		try {
+			T result = loader.load(flight.handle);
+			flight.complete(result, null);
+			return result;
+		}
+		catch (IOException e) {
+			flight.complete(null, e);
+			throw e;
+		}
+		catch (RuntimeException e) {
+			flight.complete(null, e);
+			throw e;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T await(Flight flight, RequestHandle handle, Loader<T> loader) throws IOException {
+		Runnable leave = attachLeave(flight, handle);
+		try {
+			flight.done.await();
+		}
+		catch (InterruptedException e) {
+			leave.run();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Stopped waiting for shared request");
+		}
+		if (handle != null && handle.isAborted()) {
+			throw new InterruptedIOException("Request cancelled");
+		}
+		if (flight.error instanceof IOException) {
+			throw (IOException) flight.error;
+		}
+		else if (flight.error instanceof RuntimeException) {
+			throw (RuntimeException) flight.error;
+		}
+		return flight.result != null ? loader.share((T) flight.result) : null;
+	}
+
+	/**
+	 * A caller can stop waiting in several ways, such as being interrupted and then having its handle aborted,
+	 * so the returned action only leaves the flight the first time it runs
+	 * @param flight
+	 * @param handle
+	 * @return Action that makes this caller leave the flight
+	 */
+	private static Runnable attachLeave(final Flight flight, RequestHandle handle) {
+		final AtomicBoolean left = new AtomicBoolean(false);
+		Runnable leave = new Runnable() {
+			public void run() {
+				if (left.compareAndSet(false, true)) {
+					flight.leave();
+				}
+			}
+		};
+		if (handle != null) {
+			handle.attach(leave);
+		}
+		return leave;
+	}
+
+	private static class Flight {
+
+		final String key;
+		final CountDownLatch done = new CountDownLatch(1);
+		final RequestHandle handle = new RequestHandle();
+		int waiters = 1;
+		boolean finished = false;
+		Object result = null;
+		Exception error = null;
+
+		Flight(String key) {
+			this.key = key;
+		}
+
+		synchronized boolean join() {
+			if (finished || waiters == 0) {
+				return false;
+			}
+			waiters++;
+			return true;
+		}
+
+		void leave() {
+			boolean abandoned;
+			synchronized (this) {
+				waiters--;
+				abandoned = waiters == 0 && !finished;
+			}
+			if (abandoned) {
+				// Nobody wants the result anymore, so stop new callers from joining and stop the request
+				flights.remove(key, this);
+				handle.abort();
+			}
+		}
+
+		void complete(Object result, Exception error) {
+			synchronized (this) {
+				this.result = result;
+				this.error = error;
+				finished = true;
+			}
+			flights.remove(key, this);
+			done.countDown();
+		}
+	}
+
+}
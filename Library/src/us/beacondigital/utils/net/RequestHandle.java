@@ -0,0 +1,77 @@
+package us.beacondigital.utils.net;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Tracks the request currently being executed on behalf of an asynchronous caller
+ * so it can be aborted from another thread, including before the request object exists
+ */
+class RequestHandle {
+
+	private HttpUriRequest request = null;
+	private Runnable abortAction = null;
+	private boolean aborted = false;
+	private boolean expired = false;
+
+	/**
+	 * Associate the request about to be executed.  If the handle was already aborted
+	 * the request is aborted immediately so it fails fast in the client
+	 * @param request
+	 */
+	synchronized void attach(HttpUriRequest request) {
+		this.request = request;
+		if (aborted) {
+			request.abort();
+		}
+	}
+
+	/**
+	 * Run an action instead of aborting a request, used when the caller is waiting on
+	 * a request that belongs to someone else.  Runs immediately if already aborted.
+	 * @param action
+	 */
+	void attach(Runnable action) {
+		boolean runNow;
+		synchronized (this) {
+			abortAction = action;
+			runNow = aborted;
+		}
+		if (runNow) {
+			action.run();
+		}
+	}
+
+	void abort() {
+		Runnable action;
+		synchronized (this) {
+			aborted = true;
+			if (request != null) {
+				request.abort();
+			}
+			action = abortAction;
+		}
+		// Outside the lock since the action may abort a request held by another handle
+		if (action != null) {
+			action.run();
+		}
+	}
+
+	synchronized boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Abort because the request's deadline passed rather than because the caller gave up
+	 */
+	void expire() {
+		synchronized (this) {
+			expired = true;
+		}
+		abort();
+	}
+
+	synchronized boolean isExpired() {
+		return expired;
+	}
+
+}
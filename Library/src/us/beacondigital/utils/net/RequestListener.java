@@ -0,0 +1,22 @@
+package us.beacondigital.utils.net;
+
+/**
+ * Receives timing events for requests sent by {@link WebRequest}, see {@link WebRequestMetrics#addListener(RequestListener)}.
+ * Both callbacks run on the thread doing the work, the second one often while the
+ * caller is reading the response, so implementations should be quick and thread safe.
+ */
+public interface RequestListener {
+
+	/**
+	 * The request is about to be sent.  Only the method and uri are filled in at this point.
+	 * @param metrics
+	 */
+	void onRequestStarted(RequestMetrics metrics);
+
+	/**
+	 * The response body was read to the end, closed or consumed, or the request failed
+	 * @param metrics
+	 */
+	void onRequestFinished(RequestMetrics metrics);
+
+}
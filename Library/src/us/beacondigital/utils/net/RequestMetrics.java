@@ -0,0 +1,149 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import us.beacondigital.utils.net.WebRequestResult.Failure;
+
+/**
+ * Timings and sizes for a single request, handed to each {@link RequestListener} once the response
+ * body has been read, closed or consumed, or the request has failed.  All times are in milliseconds
+ * and measured from the start of the request.  Phases that didn't happen are 0, for example a request
+ * sent on a pooled keep-alive connection has no DNS, connect or TLS time.
+ */
+public class RequestMetrics {
+
+	// Set while a request is executing so the socket factories and connection manager,
+	// which run on the same thread, can report into it
+	private static final ThreadLocal<RequestMetrics> current = new ThreadLocal<RequestMetrics>();
+
+	private final String method;
+	private final URI uri;
+	private final long startNanos;
+
+	private long dnsNanos = 0;
+	private long connectNanos = 0;
+	private long tlsNanos = 0;
+	private long poolWaitNanos = 0;
+	private long firstByteNanos = 0;
+	private long totalNanos = 0;
+	private int connectionsOpened = 0;
+	private int retries = 0;
+	private long bytesSent = -1;
+	private long bytesReceived = 0;
+	private int statusCode = 0;
+	private Failure failure = Failure.None;
+	private IOException exception = null;
+	private boolean finished = false;
+
+	RequestMetrics(String method, URI uri) {
+		this.method = method;
+		this.uri = uri;
+		this.startNanos = System.nanoTime();
+	}
+
+	static RequestMetrics current() {
+		return current.get();
+	}
+
+	static void setCurrent(RequestMetrics metrics) {
+		if (metrics != null)
+			current.set(metrics);
+		else
+			current.remove();
+	}
+
+	synchronized void addDnsTime(long nanos) { dnsNanos += nanos; }
+	synchronized void addConnectTime(long nanos) { connectNanos += nanos; connectionsOpened++; }
+	synchronized void addTlsTime(long nanos) { tlsNanos += nanos; }
+	synchronized void addPoolWaitTime(long nanos) { poolWaitNanos += nanos; }
+	synchronized void onRetry() { retries++; }
+	synchronized void setBytesSent(long bytes) { bytesSent = bytes; }
+
+	/**
+	 * Headers of the final response have arrived
+	 */
+	synchronized void onResponse(int statusCode) {
+		this.statusCode = statusCode;
+		this.firstByteNanos = System.nanoTime() - startNanos;
+		if (statusCode >= 400)
+			failure = Failure.HttpError;
+	}
+
+	/**
+	 * @return false if the request was already finished
+	 */
+	synchronized boolean finish(long bytesReceived, IOException exception, Failure failure) {
+		if (finished)
+			return false;
+		finished = true;
+		this.totalNanos = System.nanoTime() - startNanos;
+		this.bytesReceived = bytesReceived;
+		if (exception != null) {
+			this.exception = exception;
+			this.failure = failure;
+		}
+		return true;
+	}
+
+	public String getMethod() { return method; }
+	public URI getUri() { return uri; }
+
+	public synchronized long getDnsTime() { return toMillis(dnsNanos); }
+	public synchronized long getConnectTime() { return toMillis(connectNanos); }
+	public synchronized long getTlsTime() { return toMillis(tlsNanos); }
+	/**
+	 * Time spent waiting for a connection from the pool.  Consistently high values mean
+	 * the pool limits in {@link HttpClientProvider} are too low for the traffic.
+	 * @return
+	 */
+	public synchronized long getPoolWaitTime() { return toMillis(poolWaitNanos); }
+	/**
+	 * Time until the headers of the final response arrived, -1 if there was no response
+	 * @return
+	 */
+	public synchronized long getTimeToFirstByte() { return statusCode > 0 ? toMillis(firstByteNanos) : -1; }
+	/**
+	 * Time until the body was released or the request failed
+	 * @return
+	 */
+	public synchronized long getTotalTime() { return toMillis(totalNanos); }
+	/**
+	 * New connections opened, 0 when a pooled connection was reused or the response came from the cache
+	 * @return
+	 */
+	public synchronized int getConnectionsOpened() { return connectionsOpened; }
+	public synchronized int getRetries() { return retries; }
+	/**
+	 * Size of the request body, -1 if it was chunked or unknown
+	 * @return
+	 */
+	public synchronized long getBytesSent() { return bytesSent; }
+	/**
+	 * Bytes of the response body read by the caller, after any gzip/deflate decoding
+	 * @return
+	 */
+	public synchronized long getBytesReceived() { return bytesReceived; }
+	/**
+	 * @return 0 if there was no response
+	 */
+	public synchronized int getStatusCode() { return statusCode; }
+	public synchronized Failure getFailure() { return failure; }
+	/**
+	 * @return Exception the request or reading the body failed with, or null
+	 */
+	public synchronized IOException getException() { return exception; }
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s %s status=%d failure=%s total=%dms ttfb=%dms pool=%dms dns=%dms connect=%dms tls=%dms retries=%d in=%d out=%d",
+				method, uri, statusCode, failure, getTotalTime(), getTimeToFirstByte(), getPoolWaitTime(), getDnsTime(),
+				getConnectTime(), getTlsTime(), retries, bytesReceived, bytesSent);
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+}
@@ -0,0 +1,68 @@
+package us.beacondigital.utils.net;
+
+/**
+ * Timeouts applied to a single request.  The connect and read timeouts bound each network operation,
+ * while the deadline bounds the whole request, including retries and reading the body; when it passes
+ * the request is aborted and its pooled connection released.
+ * There are separate defaults for API calls and for image downloads, which can be changed at startup.
+ */
+public class RequestProfile {
+
+	private static volatile RequestProfile apiDefault = new RequestProfile(15 * 1000, 30 * 1000, 60 * 1000);
+	private static volatile RequestProfile imageDefault = new RequestProfile(10 * 1000, 15 * 1000, 30 * 1000);
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final long deadlineMillis;
+
+	/**
+	 * @param connectTimeoutMillis Time allowed to establish a connection, 0 for no limit
+	 * @param readTimeoutMillis Time allowed between bytes read from the socket, 0 for no limit
+	 * @param deadlineMillis Time allowed for the whole request, 0 for no deadline
+	 */
+	public RequestProfile(int connectTimeoutMillis, int readTimeoutMillis, long deadlineMillis) {
+		if (connectTimeoutMillis < 0 || readTimeoutMillis < 0 || deadlineMillis < 0)
+			throw new IllegalArgumentException("Timeouts can't be negative");
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	public int getConnectTimeout() { return connectTimeoutMillis; }
+	public int getReadTimeout() { return readTimeoutMillis; }
+	public long getDeadline() { return deadlineMillis; }
+	public boolean hasDeadline() { return deadlineMillis > 0; }
+
+	/**
+	 * Same connect and read timeouts with no overall deadline, for responses that are streamed
+	 * or handed back to the caller and may take longer to read than any fixed deadline
+	 * @return
+	 */
+	public RequestProfile withoutDeadline() {
+		return hasDeadline() ? new RequestProfile(connectTimeoutMillis, readTimeoutMillis, 0) : this;
+	}
+
+	/**
+	 * Profile used by WebRequest methods that aren't given one.  Methods that stream the body or
+	 * return the response itself only apply its timeouts, see {@link #withoutDeadline()}
+	 * @return
+	 */
+	public static RequestProfile getApiDefault() { return apiDefault; }
+
+	public static void setApiDefault(RequestProfile profile) {
+		if (profile != null)
+			apiDefault = profile;
+	}
+
+	/**
+	 * Profile used for RemoteImageView downloads
+	 * @return
+	 */
+	public static RequestProfile getImageDefault() { return imageDefault; }
+
+	public static void setImageDefault(RequestProfile profile) {
+		if (profile != null)
+			imageDefault = profile;
+	}
+
+}
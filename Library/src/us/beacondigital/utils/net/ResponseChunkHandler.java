@@ -0,0 +1,20 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Callback used by {@link WebRequest#readChunks(String, ResponseChunkHandler) WebRequest.readChunks}
+ * to process a response body one buffer at a time
+ */
+public interface ResponseChunkHandler {
+
+	/**
+	 * @param chunk Buffer positioned at the start of the chunk with its limit at the end.
+	 * The same buffer is reused for every chunk.
+	 * @return true to keep reading, false to stop and release the connection
+	 * @throws IOException
+	 */
+	boolean onChunk(ByteBuffer chunk) throws IOException;
+
+}
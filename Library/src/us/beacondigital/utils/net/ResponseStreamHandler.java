@@ -0,0 +1,25 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpResponse;
+
+/**
+ * Callback used by {@link WebRequest#stream(String, ResponseStreamHandler) WebRequest.stream} to
+ * consume a response body directly from the network instead of buffering it into a String or byte array
+ * @param <T> Type of the value produced from the stream
+ */
+public interface ResponseStreamHandler<T> {
+
+	/**
+	 * Called on the requesting thread once the response headers have been received.
+	 * The stream is closed by WebRequest after this method returns.
+	 * @param response Response with status line and headers
+	 * @param stream Content of the response entity, null if the response has no body
+	 * @return
+	 * @throws IOException
+	 */
+	T handleStream(HttpResponse response, InputStream stream) throws IOException;
+
+}
@@ -0,0 +1,101 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+
+import org.apache.http.HttpResponse;
+
+import us.beacondigital.utils.net.WebRequest.Verb;
+
+/**
+ * Decides whether a failed request is tried again and how long to wait first.
+ * Delays grow exponentially from the base delay up to the maximum, with random jitter
+ * so clients that failed together don't all retry at the same moment.
+ * Only idempotent verbs are retried unless configured otherwise.
+ */
+public class RetryPolicy {
+
+	/**
+	 * Never retry
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0);
+
+	/**
+	 * Up to 3 attempts, waiting around 0.5s and then 1s between them
+	 */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 8000, 0.5);
+
+	private static final Random random = new Random();
+
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final double jitter;
+	private final EnumSet<Verb> retryableVerbs;
+
+	/**
+	 * @param maxAttempts Total attempts including the first one
+	 * @param baseDelayMillis Delay before the first retry
+	 * @param maxDelayMillis Upper bound for any delay
+	 * @param jitter Fraction of each delay, between 0 and 1, that is randomized
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double jitter) {
+		this(maxAttempts, baseDelayMillis, maxDelayMillis, jitter, EnumSet.of(Verb.GET, Verb.HEAD, Verb.PUT, Verb.DELETE));
+	}
+
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double jitter, EnumSet<Verb> retryableVerbs) {
+		if (maxAttempts < 1 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis || jitter < 0 || jitter > 1)
+			throw new IllegalArgumentException("Invalid retry policy");
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.jitter = jitter;
+		this.retryableVerbs = retryableVerbs;
+	}
+
+	/**
+	 * @param verb
+	 * @param attempt Number of the attempt that just failed, starting at 1
+	 * @param error Exception thrown by the attempt, or null if a response was received
+	 * @param response Response received by the attempt, or null if it threw
+	 * @return
+	 */
+	public boolean shouldRetry(Verb verb, int attempt, IOException error, HttpResponse response) {
+		return
+				attempt < maxAttempts &&
+				retryableVerbs.contains(verb) &&
+				(error != null || isRetryableStatus(response));
+	}
+
+	/**
+	 * Delay before the next attempt: base * 2^(attempt - 1), capped at the maximum,
+	 * with the jitter fraction of it chosen at random
+	 * @param attempt Number of the attempt that just failed, starting at 1
+	 * @return
+	 */
+	public long getDelay(int attempt) {
+		long delay = baseDelayMillis << Math.min(attempt - 1, 30);
+		if (delay > maxDelayMillis || delay < 0) {
+			delay = maxDelayMillis;
+		}
+		long fixed = (long) (delay * (1 - jitter));
+		long randomized = delay - fixed;
+		return fixed + (randomized > 0 ? (long) (random.nextDouble() * randomized) : 0);
+	}
+
+	public int getMaxAttempts() { return maxAttempts; }
+
+	/**
+	 * Server errors and throttling are worth trying again; 501 Not Implemented is not
+	 * @param response
+	 * @return
+	 */
+	public static boolean isRetryableStatus(HttpResponse response) {
+		if (response == null || response.getStatusLine() == null)
+			return false;
+		int statusCode = response.getStatusLine().getStatusCode();
+		return (statusCode >= 500 && statusCode != 501) || statusCode == 408 || statusCode == 429;
+	}
+
+}
@@ -0,0 +1,148 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Socket factories that time DNS lookup, connect and TLS handshake separately for the
+ * {@link RequestMetrics} of the request opening the connection.  When no request is being
+ * measured on the calling thread they hand straight through to the stock factories.
+ */
+class TimingSocketFactory implements SocketFactory {
+
+	private final SocketFactory plain;
+
+	TimingSocketFactory(SocketFactory plain) {
+		this.plain = plain;
+	}
+
+	static TimingSocketFactory getPlain() {
+		return new TimingSocketFactory(PlainSocketFactory.getSocketFactory());
+	}
+
+	static Secure getSecure() {
+		return new Secure(SSLSocketFactory.getSocketFactory());
+	}
+
+	public Socket createSocket() throws IOException {
+		return plain.createSocket();
+	}
+
+	public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort, HttpParams params)
+			throws IOException, UnknownHostException, ConnectTimeoutException {
+		RequestMetrics metrics = RequestMetrics.current();
+		if (metrics == null) {
+			return plain.connectSocket(sock, host, port, localAddress, localPort, params);
+		}
+		return connect(metrics, plain, sock, host, port, localAddress, localPort, params);
+	}
+
+	public boolean isSecure(Socket sock) throws IllegalArgumentException {
+		return plain.isSecure(sock);
+	}
+
+	/**
+	 * Resolve the host up front so the lookup can be timed on its own.  The delegate resolves it
+	 * again, which is answered from the platform's address cache.
+	 */
+	private static Socket connect(RequestMetrics metrics, SocketFactory factory, Socket sock, String host, int port,
+			InetAddress localAddress, int localPort, HttpParams params) throws IOException {
+		long start = System.nanoTime();
+		InetAddress.getByName(host);
+		long resolved = System.nanoTime();
+		metrics.addDnsTime(resolved - start);
+		Socket connected = factory.connectSocket(sock, host, port, localAddress, localPort, params);
+		metrics.addConnectTime(System.nanoTime() - resolved);
+		return connected;
+	}
+
+	/**
+	 * Does what SSLSocketFactory.connectSocket does, with the connect and the handshake,
+	 * which the stock factory leaves to the host name check, timed separately
+	 */
+	static class Secure implements LayeredSocketFactory {
+
+		private final SSLSocketFactory ssl;
+
+		Secure(SSLSocketFactory ssl) {
+			this.ssl = ssl;
+		}
+
+		public Socket createSocket() throws IOException {
+			return ssl.createSocket();
+		}
+
+		public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort, HttpParams params)
+				throws IOException, UnknownHostException, ConnectTimeoutException {
+			RequestMetrics metrics = RequestMetrics.current();
+			if (metrics == null) {
+				return ssl.connectSocket(sock, host, port, localAddress, localPort, params);
+			}
+			
+			SSLSocket sslsock = (SSLSocket) (sock != null ? sock : createSocket());
+			if (localAddress != null || localPort > 0) {
+				sslsock.bind(new InetSocketAddress(localAddress, localPort < 0 ? 0 : localPort));
+			}
+			
+			long start = System.nanoTime();
+			InetSocketAddress remoteAddress = new InetSocketAddress(InetAddress.getByName(host), port);
+			long resolved = System.nanoTime();
+			metrics.addDnsTime(resolved - start);
+			try {
+				sslsock.connect(remoteAddress, HttpConnectionParams.getConnectionTimeout(params));
+			}
+			catch (SocketTimeoutException e) {
+				throw new ConnectTimeoutException("Connect to " + remoteAddress + " timed out");
+			}
+			long connected = System.nanoTime();
+			metrics.addConnectTime(connected - resolved);
+			
+			sslsock.setSoTimeout(HttpConnectionParams.getSoTimeout(params));
+			try {
+				sslsock.startHandshake();
+				ssl.getHostnameVerifier().verify(host, sslsock);
+			}
+			catch (IOException e) {
+				try { sslsock.close(); } catch (IOException ignored) { }
+				throw e;
+			}
+			finally {
+				metrics.addTlsTime(System.nanoTime() - connected);
+			}
+			return sslsock;
+		}
+
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException, UnknownHostException {
+			RequestMetrics metrics = RequestMetrics.current();
+			if (metrics == null) {
+				return ssl.createSocket(socket, host, port, autoClose);
+			}
+			long start = System.nanoTime();
+			try {
+				return ssl.createSocket(socket, host, port, autoClose);
+			}
+			finally {
+				metrics.addTlsTime(System.nanoTime() - start);
+			}
+		}
+
+		public boolean isSecure(Socket sock) throws IllegalArgumentException {
+			return ssl.isSecure(sock);
+		}
+	}
+
+}
@@ -1,11 +1,17 @@
 package us.beacondigital.utils.net;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -25,7 +31,9 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.auth.AuthSchemeBase;
 import org.apache.http.impl.auth.BasicScheme;
@@ -33,9 +41,14 @@ import org.apache.http.impl.auth.DigestScheme;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 
 import us.beacondigital.utils.IOUtils;
 import us.beacondigital.utils.StringUtils;
+import us.beacondigital.utils.tasks.TaskListener;
 
 /**
  * Utility for making simple requests to a web uri.
@@ -51,6 +64,15 @@ public class WebRequest {
 
 	private static final String ENCODING_UTF8 = "utf-8";
 	
+	/**
+	 * Size of the buffer handed to a {@link ResponseChunkHandler}
+	 */
+	public static final int CHUNK_SIZE = 1024 * 16;
+	
+	private static volatile boolean coalescingEnabled = true;
+	private static volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+	private static volatile boolean circuitBreakerEnabled = true;
+	
 	public final static String HEADER_LAST_MODIFIED = "Last-Modified";
 	public final static String HEADER_CONTENT_LENGTH = "Content-Length";
 	public final static String HEADER_CONTENT_TYPE = "Content-Type";
@@ -128,7 +150,8 @@ public class WebRequest {
 
 	/**
 	 * This method is where the work is done, taking all possible parameters as arguments.
-	 * There are several overloads that are much simpler when not all parameters are necessary
+	 * There are several overloads that are much simpler when not all parameters are necessary.
+	 * The default API timeouts apply, but not its deadline, since the caller reads the response at its own pace.
 	 * @param url
 	 * @param verb
 	 * @param cookies
@@ -141,18 +164,360 @@ public class WebRequest {
 	 */
 	public static HttpResponse execute(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies, HttpEntity entity,
 			Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass) {
+		return execute(client, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault().withoutDeadline());
+	}
+	
+	public static HttpResponse execute(AbstractHttpClient client, String url, RequestProfile profile) {
+		return execute(client, url, Verb.GET, null, null, null, null, AuthType.Basic, null, null, profile);
+	}
+	
+	/**
+	 * Same as {@link #execute(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) execute}
+	 * with the timeouts and deadline of the given profile.  The deadline keeps running until the response entity
+	 * has been read or consumed, so a response that is never consumed is aborted and its connection released.
+	 * @param profile
+	 * @return
+	 */
+	public static HttpResponse execute(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies, HttpEntity entity,
+			Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile) {
 		HttpResponse response = null;
+		try {
+			response = executeOrThrow(client, new RequestHandle(), profile, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+		}
+		catch (ClientProtocolException e) { }
+		catch (IOException e) { }
 		
-		// Add cookies
-		if (cookies != null && cookies.length > 0) {
-			CookieStore cookieStore = new BasicCookieStore();
-			for (Cookie cookie : cookies) {
-				cookieStore.addCookie(cookie);
+		return response;
+	}
+	
+	/**
+	 * Same as {@link #execute(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) execute}
+	 * but lets the exception through and registers the request with a handle so it can be aborted
+	 */
+	private static HttpResponse executeOrThrow(AbstractHttpClient client, RequestHandle handle, RequestProfile profile, String url, Verb verb,
+			Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser,
+			String basicAuthPass) throws IOException {
+		HttpContext context = createContext(client, cookies);
+		HttpUriRequest request = createRequest(url, verb, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+		handle.attach(request);
+		return send(client, request, context, handle, profile);
+	}
+	
+	/**
+	 * Execute a request on the shared client and read its whole body.  Identical GET and HEAD requests
+	 * that are already in flight are joined rather than sent again, see {@link #setCoalescingEnabled(boolean)}
+	 */
+	private static <T> T load(RequestHandle handle, final RequestProfile profile, final ResponseReader<T> reader, String url, Verb verb,
+			Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser,
+			String basicAuthPass) throws IOException {
+		final DefaultHttpClient client = HttpClientProvider.getShared();
+		final HttpContext context = createContext(client, cookies);
+		final HttpUriRequest request = createRequest(url, verb, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+		
+		if (coalescingEnabled && (verb == Verb.GET || verb == Verb.HEAD)) {
+			String key = RequestCoalescer.createKey(reader.getKind(), request, cookies);
+			return RequestCoalescer.execute(key, handle, new RequestCoalescer.Loader<T>() {
+				public T load(RequestHandle flightHandle) throws IOException {
+					flightHandle.attach(request);
+					T result = reader.read(send(client, request, context, flightHandle, profile));
+					checkDeadline(flightHandle);
+					return result;
+				}
+				public T share(T result) {
+					return reader.share(result);
+				}
+			});
+		}
+		
+		if (handle == null) {
+			handle = new RequestHandle();
+		}
+		handle.attach(request);
+		// Reading the stream to the end releases the connection back to the shared pool
+		T result = reader.read(send(client, request, context, handle, profile));
+		checkDeadline(handle);
+		return result;
+	}
+	
+	/**
+	 * The readers swallow errors and return whatever they got, so a body cut off by the deadline
+	 * has to be caught here rather than handed back as if it were complete
+	 */
+	private static void checkDeadline(RequestHandle handle) throws InterruptedIOException {
+		if (handle.isExpired()) {
+			throw new InterruptedIOException("Deadline passed before the response was read");
+		}
+	}
+	
+	/**
+	 * Apply the profile's timeouts and deadline, then send.  The deadline stays armed until the
+	 * response entity is released, so it also covers reading the body.  While any
+	 * {@link RequestListener} is registered the request is timed over the same span.
+	 */
+	private static HttpResponse send(AbstractHttpClient client, HttpUriRequest request, HttpContext context, final RequestHandle handle,
+			RequestProfile profile) throws IOException {
+		HttpParams requestParams = request.getParams();
+		HttpConnectionParams.setConnectionTimeout(requestParams, profile.getConnectTimeout());
+		HttpConnectionParams.setSoTimeout(requestParams, profile.getReadTimeout());
+		
+		final RequestMetrics metrics = WebRequestMetrics.isEnabled() ? new RequestMetrics(request.getMethod(), request.getURI()) : null;
+		if (!profile.hasDeadline() && metrics == null) {
+			return sendWithRetries(client, request, context, null);
+		}
+		
+		final ScheduledFuture<?> deadline;
+		if (profile.hasDeadline()) {
+			// Don't wait on the connection pool longer than the whole request is allowed to take
+			long poolTimeout = ConnManagerParams.getTimeout(client.getParams());
+			if (poolTimeout <= 0 || poolTimeout > profile.getDeadline()) {
+				ConnManagerParams.setTimeout(requestParams, profile.getDeadline());
+			}
+			deadline = DeadlineTimer.schedule(handle, profile.getDeadline());
+		}
+		else {
+			deadline = null;
+		}
+		
+		if (metrics != null) {
+			if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+				metrics.setBytesSent(((HttpEntityEnclosingRequest) request).getEntity().getContentLength());
+			}
+			WebRequestMetrics.dispatchStarted(metrics);
+		}
+		
+		HttpResponse response;
+		try {
+			response = sendWithRetries(client, request, context, metrics);
+		}
+		catch (IOException e) {
+			release(handle, deadline, metrics, 0, e);
+			throw e;
+		}
+		catch (RuntimeException e) {
+			release(handle, deadline, metrics, 0, null);
+			throw e;
+		}
+		
+		if (metrics != null) {
+			metrics.onResponse(response.getStatusLine().getStatusCode());
+		}
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			release(handle, deadline, metrics, 0, null);
+		}
+		else {
+			response.setEntity(new ReleaseTrackingEntity(entity, new ReleaseTrackingEntity.ReleaseListener() {
+				public void onRelease(long bytesRead, IOException error) {
+					release(handle, deadline, metrics, bytesRead, error);
+				}
+			}));
+		}
+		return response;
+	}
+	
+	/**
+	 * The request is done with its connection, either because the body was released or because it failed
+	 */
+	private static void release(RequestHandle handle, ScheduledFuture<?> deadline, RequestMetrics metrics, long bytesRead, IOException error) {
+		if (deadline != null) {
+			deadline.cancel(false);
+		}
+		if (metrics != null) {
+			WebRequestResult.Failure failure = error != null
+					? WebRequestResult.classify(error, handle.isAborted(), handle.isExpired())
+					: null;
+			if (metrics.finish(bytesRead, error, failure)) {
+				WebRequestMetrics.dispatchFinished(metrics);
+			}
+		}
+	}
+	
+	/**
+	 * Send a request through the response cache, retrying according to the {@link RetryPolicy}
+	 * and failing fast while the host's {@link CircuitBreaker} is open.  When retries run out
+	 * the last response is returned, or the last exception thrown.  A fresh cached response
+	 * is returned without consulting the circuit breaker, and the breaker records one outcome
+	 * for the whole request rather than one per attempt.
+	 */
+	private static HttpResponse sendWithRetries(AbstractHttpClient client, HttpUriRequest request, HttpContext context, RequestMetrics metrics)
+			throws IOException {
+		HttpResponse cached = WebRequestCache.lookup(client, request, context);
+		if (cached != null) {
+			return cached;
+		}
+		
+		String host = request.getURI().getHost();
+		CircuitBreaker breaker = circuitBreakerEnabled ? CircuitBreaker.forHost(host) : null;
+		if (breaker != null && !breaker.allowRequest()) {
+			throw new CircuitOpenException(host);
+		}
+		
+		HttpResponse response = null;
+		IOException error = null;
+		try {
+			response = sendAttempts(client, request, context, metrics);
+			return response;
+		}
+		catch (IOException e) {
+			error = e;
+			throw e;
+		}
+		finally {
+			if (breaker != null) {
+				if (request.isAborted())
+					breaker.onAbandoned();
+				else if (error != null || response == null || (response.getStatusLine() != null && response.getStatusLine().getStatusCode() >= 500))
+					breaker.onFailure();
+				else
+					breaker.onSuccess();
 			}
-			client.setCookieStore(cookieStore);
 		}
+	}
+	
+	private static HttpResponse sendAttempts(AbstractHttpClient client, HttpUriRequest request, HttpContext context, RequestMetrics metrics)
+			throws IOException {
+		Verb verb = Verb.valueOf(request.getMethod());
+		RetryPolicy policy = retryPolicy;
 		
-		// Construct the appropriate request object, adding parameters where valid
+		int attempt = 0;
+		while (true) {
+			attempt++;
+			HttpResponse response = null;
+			IOException error = null;
+			RequestMetrics.setCurrent(metrics);
+			try {
+				response = WebRequestCache.execute(client, request, context);
+			}
+			catch (IOException e) {
+				error = e;
+			}
+			finally {
+				RequestMetrics.setCurrent(null);
+			}
+			
+			if (request.isAborted() || !isRepeatable(request) || !policy.shouldRetry(verb, attempt, error, response)) {
+				if (error != null)
+					throw error;
+				return response;
+			}
+			
+			if (response != null) {
+				consume(response);
+			}
+			if (metrics != null) {
+				metrics.onRetry();
+			}
+			try {
+				Thread.sleep(policy.getDelay(attempt));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to retry");
+			}
+		}
+	}
+	
+	/**
+	 * Requests whose body is a one-shot stream can't be sent a second time
+	 */
+	private static boolean isRepeatable(HttpUriRequest request) {
+		if (request instanceof HttpEntityEnclosingRequest) {
+			HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			return entity == null || entity.isRepeatable();
+		}
+		return true;
+	}
+	
+	private static void consume(HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			try {
+				entity.consumeContent();
+			}
+			catch (IOException e) { }
+		}
+	}
+	
+	/**
+	 * Policy applied to every request made through WebRequest, {@link RetryPolicy#DEFAULT} unless changed.
+	 * Use {@link RetryPolicy#NONE} to turn retries off.
+	 * @param policy
+	 */
+	public static void setRetryPolicy(RetryPolicy policy) {
+		retryPolicy = policy != null ? policy : RetryPolicy.NONE;
+	}
+	
+	/**
+	 * Per-host circuit breakers are enabled by default, see {@link CircuitBreaker#configure(int, long)}
+	 * @param enabled
+	 */
+	public static void setCircuitBreakerEnabled(boolean enabled) {
+		circuitBreakerEnabled = enabled;
+	}
+	
+	/**
+	 * When enabled (the default), concurrent identical GET and HEAD requests made through
+	 * read and readBytes share a single network round trip
+	 * @param enabled
+	 */
+	public static void setCoalescingEnabled(boolean enabled) {
+		coalescingEnabled = enabled;
+	}
+	
+	/**
+	 * Reads a whole response body into the type returned by one of the read methods
+	 */
+	private interface ResponseReader<T> {
+		String getKind();
+		T read(HttpResponse response);
+		T share(T result);
+	}
+	
+	private static final ResponseReader<String> STRING_READER = new ResponseReader<String>() {
+		public String getKind() { return "String"; }
+		public String read(HttpResponse response) { return StringUtils.readStream(response); }
+		public String share(String result) { return result; }
+	};
+	
+	private static final ResponseReader<byte[]> BYTES_READER = new ResponseReader<byte[]>() {
+		public String getKind() { return "byte[]"; }
+		public byte[] read(HttpResponse response) { return HttpUtils.readBytes(response); }
+		public byte[] share(byte[] result) { return result.clone(); }
+	};
+	
+	/**
+	 * Add cookies.  The shared client is used by everyone, so cookies are scoped
+	 * to the request through its context rather than set on the client itself
+	 * @param client
+	 * @param cookies
+	 * @return Context to execute the request with, null when the client's own state should be used
+	 */
+	private static HttpContext createContext(AbstractHttpClient client, Cookie[] cookies) {
+		HttpContext context = null;
+		if (HttpClientProvider.isShared(client)) {
+			context = new BasicHttpContext();
+			context.setAttribute(ClientContext.COOKIE_STORE, createCookieStore(cookies));
+		}
+		else if (cookies != null && cookies.length > 0) {
+			client.setCookieStore(createCookieStore(cookies));
+		}
+		return context;
+	}
+	
+	/**
+	 * Construct the appropriate request object, adding parameters, authorization and headers where valid
+	 * @param url
+	 * @param verb
+	 * @param entity
+	 * @param headers
+	 * @param params
+	 * @param authType
+	 * @param basicAuthUser
+	 * @param basicAuthPass
+	 * @return
+	 */
+	private static HttpUriRequest createRequest(String url, Verb verb, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass) {
 		HttpUriRequest request = null;		
 		switch (verb) {
 		case GET:
@@ -176,6 +541,7 @@ public class WebRequest {
 			else {
 				addPostParams((HttpPut) request, params);
 			}
+			break;
 		case DELETE:
 			request = new HttpDelete(url);
 			break;
@@ -199,15 +565,19 @@ public class WebRequest {
 		// If we have anything in WebRequestGlobalHeaders...
 		addGlobalHeaders(request);
 		
-		try {
-			response = client.execute(request);
-		}
-		catch (ClientProtocolException e) { }
-		catch (IOException e) { }
-		
-		return response;
+		return request;
 	}
 	
+	private static CookieStore createCookieStore(Cookie[] cookies) {
+		CookieStore cookieStore = new BasicCookieStore();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				cookieStore.addCookie(cookie);
+			}
+		}
+		return cookieStore;
+	}
+
 	private static void addGetParams(HttpGet get, NameValuePair[] params) {
 		if(params != null && params.length > 0) {
 			String query = URLEncodedUtils.format(Arrays.asList(params), ENCODING_UTF8);
@@ -331,10 +701,20 @@ public class WebRequest {
 	 */
 	public static String read(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
 			AuthType authType, String basicAuthUser, String basicAuthPass) {
-		DefaultHttpClient client = HttpClientProvider.get();
-		HttpResponse response = execute(client, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
-		String data = StringUtils.readStream(response);
-		IOUtils.safeClose(client);
+		return read(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault());
+	}
+	
+	/**
+	 * Same as {@link #read(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) read}
+	 * with the timeouts and deadline of the given profile
+	 */
+	public static String read(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile) {
+		String data = null;
+		try {
+			data = load(null, profile, STRING_READER, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+		}
+		catch (IOException e) { }
 		return data;
 	}
 	
@@ -391,10 +771,344 @@ public class WebRequest {
 	 * @return
 	 */
 	public static byte[] readBytes(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass) {
-		DefaultHttpClient client = HttpClientProvider.get();
-		HttpResponse response = execute(client, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
-		byte[] data = HttpUtils.readBytes(response);
-		IOUtils.safeClose(client);
+		return readBytes(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault());
+	}
+	
+	/**
+	 * Same as {@link #readBytes(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) readBytes}
+	 * with the timeouts and deadline of the given profile
+	 */
+	public static byte[] readBytes(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile) {
+		byte[] data = null;
+		try {
+			data = load(null, profile, BYTES_READER, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+		}
+		catch (IOException e) { }
 		return data;
 	}
+	
+	/**
+	 * Streams the body of a GET request to the supplied handler without buffering it in memory.
+	 * See {@link #stream(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String, ResponseStreamHandler) stream}
+	 * @param url
+	 * @param handler
+	 * @return The value returned by the handler, or null if the request failed
+	 */
+	public static <T> T stream(String url, ResponseStreamHandler<T> handler) {
+		return stream(url, Verb.GET, null, null, null, null, AuthType.Basic, null, null, handler);
+	}
+	
+	public static <T> T stream(String url, Header[] headers, ResponseStreamHandler<T> handler) {
+		return stream(url, Verb.GET, null, null, headers, null, AuthType.Basic, null, null, handler);
+	}
+	
+	public static <T> T stream(String url, Verb verb, Cookie[] cookies, NameValuePair[] params, Header[] headers, ResponseStreamHandler<T> handler) {
+		return stream(url, verb, cookies, null, headers, params, AuthType.Basic, null, null, handler);
+	}
+	
+	/**
+	 * Executes a request on the shared client and hands the response entity's InputStream to the handler.
+	 * The connection is released back to the pool when the handler returns.  If the handler throws,
+	 * the request is aborted rather than draining whatever is left of the body.
+	 * @param url
+	 * @param verb
+	 * @param cookies
+	 * @param entity
+	 * @param headers
+	 * @param params
+	 * @param authType
+	 * @param basicAuthUser
+	 * @param basicAuthPass
+	 * @param handler
+	 * @return The value returned by the handler, or null if the request or the handler failed
+	 */
+	public static <T> T stream(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass, ResponseStreamHandler<T> handler) {
+		return stream(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault().withoutDeadline(), handler);
+	}
+	
+	/**
+	 * Same as {@link #stream(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String, ResponseStreamHandler) stream}
+	 * with the timeouts and deadline of the given profile.  The deadline includes the time spent in the handler.
+	 */
+	public static <T> T stream(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile, ResponseStreamHandler<T> handler) {
+		T result = null;
+		RequestHandle handle = new RequestHandle();
+		InputStream stream = null;
+		boolean completed = false;
+		try {
+			HttpResponse response = executeOrThrow(HttpClientProvider.getShared(), handle, profile, url, verb, cookies, entity, headers, params,
+					authType, basicAuthUser, basicAuthPass);
+			HttpEntity responseEntity = response.getEntity();
+			if (responseEntity != null) {
+				stream = responseEntity.getContent();
+			}
+			result = handler.handleStream(response, stream);
+			completed = true;
+		}
+		catch (ClientProtocolException e) { }
+		catch (IOException e) { }
+		catch (RuntimeException e) { }
+		finally {
+			if (completed) {
+				IOUtils.safeClose(stream);
+			}
+			else {
+				handle.abort();
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Reads the body of a GET request in chunks through a single reusable buffer.
+	 * See {@link #readChunks(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String, ResponseChunkHandler) readChunks}
+	 * @param url
+	 * @param handler
+	 * @return
+	 */
+	public static long readChunks(String url, ResponseChunkHandler handler) {
+		return readChunks(url, Verb.GET, null, null, null, null, AuthType.Basic, null, null, handler);
+	}
+	
+	public static long readChunks(String url, Header[] headers, ResponseChunkHandler handler) {
+		return readChunks(url, Verb.GET, null, null, headers, null, AuthType.Basic, null, null, handler);
+	}
+	
+	/**
+	 * Reads the response body through a single {@link ByteBuffer} of {@link #CHUNK_SIZE} bytes which is
+	 * handed to the handler each time it is filled, so memory use stays the same no matter how large the body is.
+	 * The handler must not keep a reference to the buffer since its contents are replaced by the next chunk.
+	 * @param url
+	 * @param verb
+	 * @param cookies
+	 * @param entity
+	 * @param headers
+	 * @param params
+	 * @param authType
+	 * @param basicAuthUser
+	 * @param basicAuthPass
+	 * @param handler
+	 * @return Total number of bytes handed to the handler, or -1 if the request failed or the body was only partially read
+	 */
+	public static long readChunks(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass, ResponseChunkHandler handler) {
+		return readChunks(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault().withoutDeadline(), handler);
+	}
+	
+	public static long readChunks(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers, NameValuePair[] params,
+			AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile, final ResponseChunkHandler handler) {
+		Long total = stream(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, profile, new ResponseStreamHandler<Long>() {
+			public Long handleStream(HttpResponse response, InputStream stream) throws IOException {
+				long total = 0;
+				if (stream != null) {
+					ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+					byte[] array = buffer.array();
+					int bytesRead;
+					while ((bytesRead = stream.read(array, 0, array.length)) != -1) {
+						buffer.clear();
+						buffer.limit(bytesRead);
+						total += bytesRead;
+						if (!handler.onChunk(buffer)) {
+							// The caller has what it needs, throw away the rest of the body
+							throw new IOException("Stopped by handler");
+						}
+					}
+				}
+				return total;
+			}
+		});
+		return total != null ? total : -1;
+	}
+	
+	/**
+	 * Performs a GET request on the {@link WebRequestExecutor} thread pool.
+	 * See {@link #executeAsync(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String, TaskListener) executeAsync}
+	 * @param client
+	 * @param url
+	 * @param listener
+	 * @return
+	 */
+	public static WebRequestFuture<HttpResponse> executeAsync(AbstractHttpClient client, String url, TaskListener<Void, HttpResponse> listener) {
+		return executeAsync(client, url, Verb.GET, null, null, null, null, AuthType.Basic, null, null, listener);
+	}
+	
+	public static WebRequestFuture<HttpResponse> executeAsync(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies, NameValuePair[] params,
+			Header[] headers, TaskListener<Void, HttpResponse> listener) {
+		return executeAsync(client, url, verb, cookies, null, headers, params, AuthType.Basic, null, null, listener);
+	}
+	
+	/**
+	 * Asynchronous version of {@link #execute(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) execute}.
+	 * The request runs on the bounded {@link WebRequestExecutor} pool and the listener, which may be null,
+	 * receives the result on the main thread.  Cancelling the returned future aborts the request.
+	 * The caller is responsible for consuming the response entity.
+	 * @return Future for the response.  get() throws an ExecutionException if the request fails, wrapping a
+	 * RejectedExecutionException if the executor queue was full
+	 */
+	public static WebRequestFuture<HttpResponse> executeAsync(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies,
+			HttpEntity entity, Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser,
+			String basicAuthPass, TaskListener<Void, HttpResponse> listener) {
+		return executeAsync(client, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault().withoutDeadline(), listener);
+	}
+	
+	public static WebRequestFuture<HttpResponse> executeAsync(final AbstractHttpClient client, final String url, final Verb verb, final Cookie[] cookies,
+			final HttpEntity entity, final Header[] headers, final NameValuePair[] params, final AuthType authType, final String basicAuthUser,
+			final String basicAuthPass, final RequestProfile profile, TaskListener<Void, HttpResponse> listener) {
+		final RequestHandle handle = new RequestHandle();
+		return submit(new Callable<HttpResponse>() {
+			public HttpResponse call() throws Exception {
+				return executeOrThrow(client, handle, profile, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+			}
+		}, handle, listener);
+	}
+	
+	public static WebRequestFuture<String> readAsync(String url, TaskListener<Void, String> listener) {
+		return readAsync(url, Verb.GET, null, null, null, null, AuthType.Basic, null, null, listener);
+	}
+	
+	public static WebRequestFuture<String> readAsync(String url, Verb verb, Cookie[] cookies, NameValuePair[] params, Header[] headers,
+			TaskListener<Void, String> listener) {
+		return readAsync(url, verb, cookies, null, headers, params, AuthType.Basic, null, null, listener);
+	}
+	
+	/**
+	 * Asynchronous version of {@link #read(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) read}
+	 * using the shared client.  See {@link #executeAsync(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String, TaskListener) executeAsync}
+	 */
+	public static WebRequestFuture<String> readAsync(String url, Verb verb, Cookie[] cookies, HttpEntity entity,
+			Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass,
+			TaskListener<Void, String> listener) {
+		return readAsync(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault(), listener);
+	}
+	
+	public static WebRequestFuture<String> readAsync(final String url, final Verb verb, final Cookie[] cookies, final HttpEntity entity,
+			final Header[] headers, final NameValuePair[] params, final AuthType authType, final String basicAuthUser, final String basicAuthPass,
+			final RequestProfile profile, TaskListener<Void, String> listener) {
+		final RequestHandle handle = new RequestHandle();
+		return submit(new Callable<String>() {
+			public String call() throws Exception {
+				return load(handle, profile, STRING_READER, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+			}
+		}, handle, listener);
+	}
+	
+	public static WebRequestFuture<byte[]> readBytesAsync(String url, TaskListener<Void, byte[]> listener) {
+		return readBytesAsync(url, Verb.GET, null, null, null, null, AuthType.Basic, null, null, listener);
+	}
+	
+	public static WebRequestFuture<byte[]> readBytesAsync(String url, Verb verb, Cookie[] cookies, NameValuePair[] params, Header[] headers,
+			TaskListener<Void, byte[]> listener) {
+		return readBytesAsync(url, verb, cookies, null, headers, params, AuthType.Basic, null, null, listener);
+	}
+	
+	/**
+	 * Asynchronous version of {@link #readBytes(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) readBytes}
+	 * using the shared client.  See {@link #executeAsync(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String, TaskListener) executeAsync}
+	 */
+	public static WebRequestFuture<byte[]> readBytesAsync(String url, Verb verb, Cookie[] cookies, HttpEntity entity,
+			Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass,
+			TaskListener<Void, byte[]> listener) {
+		return readBytesAsync(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault(), listener);
+	}
+	
+	public static WebRequestFuture<byte[]> readBytesAsync(final String url, final Verb verb, final Cookie[] cookies, final HttpEntity entity,
+			final Header[] headers, final NameValuePair[] params, final AuthType authType, final String basicAuthUser, final String basicAuthPass,
+			final RequestProfile profile, TaskListener<Void, byte[]> listener) {
+		final RequestHandle handle = new RequestHandle();
+		return submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return load(handle, profile, BYTES_READER, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+			}
+		}, handle, listener);
+	}
+	
+	private static <T> WebRequestFuture<T> submit(Callable<T> callable, RequestHandle handle, TaskListener<Void, T> listener) {
+		WebRequestFuture<T> future = new WebRequestFuture<T>(callable, handle, listener);
+		if (listener != null) {
+			listener.onPreExecute();
+		}
+		try {
+			WebRequestExecutor.get().execute(future);
+		}
+		catch (RejectedExecutionException e) {
+			// Queue full or executor shut down, fail like any other request so the listener still hears back
+			future.reject(e);
+		}
+		return future;
+	}
+	
+	public static WebRequestResult<HttpResponse> executeForResult(AbstractHttpClient client, String url) {
+		return executeForResult(client, url, Verb.GET, null, null, null, null, AuthType.Basic, null, null);
+	}
+	
+	public static WebRequestResult<HttpResponse> executeForResult(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies,
+			NameValuePair[] params, Header[] headers) {
+		return executeForResult(client, url, verb, cookies, null, headers, params, AuthType.Basic, null, null);
+	}
+	
+	/**
+	 * Same as {@link #execute(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) execute}
+	 * but instead of returning null on failure, the result says whether the request failed because of the network,
+	 * a timeout, an open circuit breaker or an error status.  The value of the result is the response itself,
+	 * whose entity the caller is responsible for consuming.
+	 */
+	public static WebRequestResult<HttpResponse> executeForResult(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies, HttpEntity entity,
+			Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass) {
+		return executeForResult(client, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault().withoutDeadline());
+	}
+	
+	/**
+	 * A request aborted because its profile's deadline passed is reported as {@link WebRequestResult.Failure#Timeout Timeout}
+	 */
+	public static WebRequestResult<HttpResponse> executeForResult(AbstractHttpClient client, String url, Verb verb, Cookie[] cookies, HttpEntity entity,
+			Header[] headers, NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile) {
+		RequestHandle handle = new RequestHandle();
+		WebRequestResult<HttpResponse> result;
+		try {
+			HttpResponse response = executeOrThrow(client, handle, profile, url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass);
+			result = WebRequestResult.fromResponse(response, response);
+		}
+		catch (IOException e) {
+			result = WebRequestResult.fromException(e, handle.isAborted(), handle.isExpired());
+		}
+		return result;
+	}
+	
+	public static WebRequestResult<String> readForResult(String url) {
+		return readForResult(url, Verb.GET, null, null, null, null, AuthType.Basic, null, null);
+	}
+	
+	public static WebRequestResult<String> readForResult(String url, Verb verb, Cookie[] cookies, NameValuePair[] params, Header[] headers) {
+		return readForResult(url, verb, cookies, null, headers, params, AuthType.Basic, null, null);
+	}
+	
+	/**
+	 * Same as {@link #read(String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) read}
+	 * but returns a typed result, see {@link #executeForResult(AbstractHttpClient, String, Verb, Cookie[], HttpEntity, Header[], NameValuePair[], AuthType, String, String) executeForResult}.
+	 * The body is read for error statuses too.
+	 */
+	public static WebRequestResult<String> readForResult(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers,
+			NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass) {
+		return readForResult(url, verb, cookies, entity, headers, params, authType, basicAuthUser, basicAuthPass, RequestProfile.getApiDefault());
+	}
+	
+	public static WebRequestResult<String> readForResult(String url, Verb verb, Cookie[] cookies, HttpEntity entity, Header[] headers,
+			NameValuePair[] params, AuthType authType, String basicAuthUser, String basicAuthPass, RequestProfile profile) {
+		RequestHandle handle = new RequestHandle();
+		WebRequestResult<String> result;
+		try {
+			HttpResponse response = executeOrThrow(HttpClientProvider.getShared(), handle, profile, url, verb, cookies, entity, headers, params,
+					authType, basicAuthUser, basicAuthPass);
+			String data = StringUtils.readStream(response);
+			checkDeadline(handle);
+			result = WebRequestResult.fromResponse(data, response);
+		}
+		catch (IOException e) {
+			result = WebRequestResult.fromException(e, handle.isAborted(), handle.isExpired());
+		}
+		return result;
+	}
 }
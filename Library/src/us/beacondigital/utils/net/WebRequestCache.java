@@ -0,0 +1,291 @@
+package us.beacondigital.utils.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+import us.beacondigital.utils.IOUtils;
+import us.beacondigital.utils.net.cache.CacheControl;
+import us.beacondigital.utils.net.cache.CachedResponse;
+import us.beacondigital.utils.net.cache.ResponseCache;
+
+/**
+ * Maintains the {@link ResponseCache} used for GET requests that go through the WebRequest class.
+ * When a cache is installed, fresh responses are served without touching the network and stale
+ * responses are revalidated with If-None-Match/If-Modified-Since, so a 304 Not Modified is answered
+ * from the stored body.  Requests carrying credentials or cookies are never cached, and stored
+ * responses only answer requests that match the headers named by their Vary header.
+ * No cache is installed by default.
+ */
+public class WebRequestCache {
+
+	public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String HEADER_AUTHORIZATION = "Authorization";
+	public static final String HEADER_COOKIE = "Cookie";
+
+	private static final int DEFAULT_MAX_ENTRY_BYTES = 512 * 1024;
+
+	private static volatile ResponseCache cache = null;
+	private static int maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+	private static final AtomicLong revalidationCount = new AtomicLong();
+	private static final AtomicLong notModifiedCount = new AtomicLong();
+
+	public static void install(ResponseCache responseCache) {
+		cache = responseCache;
+	}
+
+	public static void uninstall() {
+		cache = null;
+	}
+
+	public static ResponseCache get() {
+		return cache;
+	}
+
+	/**
+	 * Responses with larger bodies are passed through without being cached
+	 * @param bytes
+	 */
+	public static void setMaxEntryBytes(int bytes) {
+		if (bytes > 0)
+			maxEntryBytes = bytes;
+	}
+
+	/**
+	 * Requests answered from the cache, either fresh or after a 304 Not Modified
+	 */
+	public static long getHitCount() { return hitCount.get(); }
+
+	/**
+	 * Requests where the body had to be downloaded
+	 */
+	public static long getMissCount() { return missCount.get(); }
+
+	/**
+	 * Conditional requests sent to check a stale entry
+	 */
+	public static long getRevalidationCount() { return revalidationCount.get(); }
+
+	/**
+	 * Conditional requests the server answered with 304 Not Modified
+	 */
+	public static long getNotModifiedCount() { return notModifiedCount.get(); }
+
+	public static void resetCounters() {
+		hitCount.set(0);
+		missCount.set(0);
+		revalidationCount.set(0);
+		notModifiedCount.set(0);
+	}
+
+	/**
+	 * Answer the request from a fresh cache entry, without going to the network
+	 * @param client
+	 * @param request
+	 * @param context
+	 * @return The cached response, or null if the request has to be sent with {@link #execute(AbstractHttpClient, HttpUriRequest, HttpContext)}
+	 */
+	static HttpResponse lookup(AbstractHttpClient client, HttpUriRequest request, HttpContext context) {
+		ResponseCache responseCache = cache;
+		CachedResponse cached = findEntry(responseCache, client, request, context);
+		if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+			hitCount.incrementAndGet();
+			return cached.toHttpResponse();
+		}
+		return null;
+	}
+
+	/**
+	 * Send the request.  For GET requests a stale cache entry is revalidated, so a 304 Not Modified is
+	 * answered from the stored body, and a storable response is added to the cache.
+	 * @param client
+	 * @param request
+	 * @param context
+	 * @return
+	 * @throws IOException
+	 */
+	static HttpResponse execute(AbstractHttpClient client, HttpUriRequest request, HttpContext context) throws IOException {
+		ResponseCache responseCache = cache;
+		if (responseCache == null || !(request instanceof HttpGet) || isPrivate(client, request, context)) {
+			return client.execute(request, context);
+		}
+
+		String key = request.getURI().toString();
+		CachedResponse cached = findEntry(responseCache, client, request, context);
+		if (cached != null && cached.hasValidators()) {
+			addConditionalHeaders(request, cached);
+			revalidationCount.incrementAndGet();
+		}
+
+		HttpResponse response = client.execute(request, context);
+		int statusCode = response.getStatusLine().getStatusCode();
+		long responseTime = System.currentTimeMillis();
+
+		if (statusCode == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+			consume(response);
+			CachedResponse updated = cached.revalidated(response, responseTime);
+			responseCache.put(key, updated);
+			notModifiedCount.incrementAndGet();
+			hitCount.incrementAndGet();
+			return updated.toHttpResponse();
+		}
+
+		missCount.incrementAndGet();
+		if (statusCode == HttpStatus.SC_OK && isStorable(response)) {
+			store(responseCache, key, request, response, responseTime);
+		}
+		else if (cached != null) {
+			responseCache.remove(key);
+		}
+		return response;
+	}
+
+	/**
+	 * @return The stored response for a cacheable request, null if there is none or it doesn't match the request's varied headers
+	 */
+	private static CachedResponse findEntry(ResponseCache responseCache, AbstractHttpClient client, HttpUriRequest request, HttpContext context) {
+		if (responseCache == null || !(request instanceof HttpGet) || isPrivate(client, request, context) || CacheControl.parse(request).isNoCache()) {
+			return null;
+		}
+		CachedResponse cached = responseCache.get(request.getURI().toString());
+		return cached != null && cached.matches(request) ? cached : null;
+	}
+
+	/**
+	 * Responses to requests that identify the user, through an Authorization header or cookies
+	 * sent from the request's cookie store, are specific to that user and are not shared through the cache
+	 * @param client
+	 * @param request
+	 * @param context
+	 * @return
+	 */
+	private static boolean isPrivate(AbstractHttpClient client, HttpUriRequest request, HttpContext context) {
+		if (request.containsHeader(HEADER_AUTHORIZATION) || request.containsHeader(HEADER_COOKIE)) {
+			return true;
+		}
+		CookieStore cookieStore = context != null ? (CookieStore) context.getAttribute(ClientContext.COOKIE_STORE) : null;
+		if (cookieStore == null) {
+			cookieStore = client.getCookieStore();
+		}
+		return cookieStore != null && !cookieStore.getCookies().isEmpty();
+	}
+
+	private static void addConditionalHeaders(HttpUriRequest request, CachedResponse cached) {
+		String etag = cached.getETag();
+		if (etag != null && !request.containsHeader(HEADER_IF_NONE_MATCH)) {
+			request.addHeader(HEADER_IF_NONE_MATCH, etag);
+		}
+		String lastModified = cached.getLastModified();
+		if (lastModified != null && !request.containsHeader(HEADER_IF_MODIFIED_SINCE)) {
+			request.addHeader(HEADER_IF_MODIFIED_SINCE, lastModified);
+		}
+	}
+
+	/**
+	 * Only responses that may be stored and that are either fresh for a while or can be revalidated are worth keeping.
+	 * A response that varies on "*" can never be matched to a later request.
+	 * @param response
+	 * @return
+	 */
+	private static boolean isStorable(HttpResponse response) {
+		CacheControl cacheControl = CacheControl.parse(response);
+		return
+				response.getEntity() != null &&
+				!cacheControl.isNoStore() &&
+				CachedResponse.getVaryNames(response.getHeaders(CachedResponse.HEADER_VARY)) != null &&
+				(cacheControl.getFreshnessLifetime() > 0 ||
+					response.containsHeader(CachedResponse.HEADER_ETAG) ||
+					response.containsHeader(CachedResponse.HEADER_LAST_MODIFIED));
+	}
+
+	/**
+	 * Buffer the body up to the entry limit and store it.  The response entity is replaced so the caller can
+	 * still read the body.  If the body turns out to be larger than the limit it is passed through uncached,
+	 * with the bytes already read put back in front of the rest of the stream.
+	 */
+	private static void store(ResponseCache responseCache, String key, HttpUriRequest request, HttpResponse response, long responseTime)
+			throws IOException {
+		HttpEntity entity = response.getEntity();
+		long contentLength = entity.getContentLength();
+		if (contentLength > maxEntryBytes) {
+			return;
+		}
+
+		InputStream in = entity.getContent();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 1024 * 16);
+		byte[] data = new byte[1024 * 16];
+		int bytesRead;
+		boolean tooLarge = false;
+		try {
+			while ((bytesRead = in.read(data, 0, data.length)) != -1) {
+				buffer.write(data, 0, bytesRead);
+				if (buffer.size() > maxEntryBytes) {
+					tooLarge = true;
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			IOUtils.safeClose(in);
+			throw e;
+		}
+
+		byte[] body = buffer.toByteArray();
+		if (tooLarge) {
+			InputStreamEntity passThrough = new InputStreamEntity(new SequenceInputStream(new ByteArrayInputStream(body), in), -1);
+			passThrough.setContentType(entity.getContentType());
+			response.setEntity(passThrough);
+			return;
+		}
+		IOUtils.safeClose(in);
+
+		ByteArrayEntity buffered = new ByteArrayEntity(body);
+		buffered.setContentType(entity.getContentType());
+		response.setEntity(buffered);
+
+		List<Header> headers = new ArrayList<Header>();
+		for (Header header : response.getAllHeaders()) {
+			if (CachedResponse.isStoredHeader(header.getName())) {
+				headers.add(header);
+			}
+		}
+		Header[] stored = headers.toArray(new Header[headers.size()]);
+		Header[] varyHeaders = CachedResponse.selectVaryHeaders(CachedResponse.getVaryNames(stored), request);
+		CachedResponse cached = new CachedResponse(response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase(),
+				stored, body, responseTime, varyHeaders);
+		responseCache.put(key, cached);
+	}
+
+	private static void consume(HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			try {
+				entity.consumeContent();
+			}
+			catch (IOException e) { }
+		}
+	}
+
+}
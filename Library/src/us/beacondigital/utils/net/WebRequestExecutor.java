@@ -0,0 +1,73 @@
+package us.beacondigital.utils.net;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the bounded executor used by the asynchronous WebRequest methods.
+ * By default a fixed number of threads work through a bounded queue; when the queue is full
+ * new requests are rejected with a RejectedExecutionException rather than piling up unbounded.
+ * An application can supply its own executor with {@link #setExecutor(ExecutorService)}.
+ */
+public class WebRequestExecutor {
+
+	private static final int DEFAULT_MAX_THREADS = 4;
+	private static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	private static int maxThreads = DEFAULT_MAX_THREADS;
+	private static int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private static ExecutorService executor = null;
+
+	public static synchronized ExecutorService get() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(queueCapacity), new WebRequestThreadFactory());
+		}
+		return executor;
+	}
+
+	/**
+	 * Replace the executor used for asynchronous requests.  The previous default executor,
+	 * if one was created, is shut down once its queued requests finish.
+	 * @param executorService
+	 */
+	public static synchronized void setExecutor(ExecutorService executorService) {
+		shutdown();
+		executor = executorService;
+	}
+
+	/**
+	 * Size the default executor.  Takes effect the next time the default executor is created.
+	 * @param threads Number of requests that can be in flight at once
+	 * @param capacity Number of requests that can wait for a thread
+	 */
+	public static synchronized void setLimits(int threads, int capacity) {
+		if (threads > 0 && capacity > 0) {
+			maxThreads = threads;
+			queueCapacity = capacity;
+		}
+	}
+
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private static class WebRequestThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger(1);
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "WebRequest #" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
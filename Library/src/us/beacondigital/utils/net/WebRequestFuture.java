@@ -0,0 +1,92 @@
+package us.beacondigital.utils.net;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import us.beacondigital.utils.tasks.TaskListener;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Result of an asynchronous {@link WebRequest} call.  Cancelling the future aborts the underlying
+ * HTTP request so its connection is released right away instead of when the response has been read.
+ * {@link #get()} throws an ExecutionException wrapping the original IOException when the request fails.
+ * @param <T>
+ */
+public class WebRequestFuture<T> extends FutureTask<T> {
+
+	private static Handler mainHandler = null;
+
+	private final RequestHandle handle;
+	private final TaskListener<Void, T> listener;
+
+	WebRequestFuture(Callable<T> callable, RequestHandle handle, TaskListener<Void, T> listener) {
+		super(callable);
+		this.handle = handle;
+		this.listener = listener;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled) {
+			handle.abort();
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Fail the request without running it, when it couldn't be queued.  The listener gets onPostExecute(null)
+	 * like any failed request, and get() throws an ExecutionException wrapping the cause.
+	 * @param cause
+	 */
+	void reject(Throwable cause) {
+		setException(cause);
+	}
+
+	/**
+	 * Deliver the result to the listener on the main thread, the same way AsyncTask would.
+	 * A failed request is delivered to onPostExecute as null.
+	 */
+	@Override
+	protected void done() {
+		if (listener != null) {
+			post(new Runnable() {
+				public void run() {
+					if (isCancelled()) {
+						listener.onCancelled(null);
+					}
+					else {
+						listener.onPostExecute(getResult());
+					}
+				}
+			});
+		}
+	}
+
+	private T getResult() {
+		T result = null;
+		try {
+			result = get();
+		}
+		catch (InterruptedException e) { }
+		catch (ExecutionException e) { }
+		return result;
+	}
+
+	private static synchronized void post(Runnable runnable) {
+		Looper mainLooper = Looper.getMainLooper();
+		if (mainLooper == null) {
+			runnable.run();
+		}
+		else {
+			if (mainHandler == null) {
+				mainHandler = new Handler(mainLooper);
+			}
+			mainHandler.post(runnable);
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package us.beacondigital.utils.net;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of {@link RequestListener}s.  Requests are only timed while at least one listener is registered.
+ * <pre>
+ * HistogramRequestListener histograms = new HistogramRequestListener();
+ * WebRequestMetrics.addListener(histograms);
+ * ...
+ * Log.d(TAG, histograms.dump());
+ * </pre>
+ */
+public class WebRequestMetrics {
+
+	private static final List<RequestListener> listeners = new CopyOnWriteArrayList<RequestListener>();
+
+	public static void addListener(RequestListener listener) {
+		if (listener != null && !listeners.contains(listener))
+			listeners.add(listener);
+	}
+
+	public static void removeListener(RequestListener listener) {
+		listeners.remove(listener);
+	}
+
+	public static boolean isEnabled() {
+		return !listeners.isEmpty();
+	}
+
+	static void dispatchStarted(RequestMetrics metrics) {
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onRequestStarted(metrics);
+			}
+			catch (RuntimeException e) { }
+		}
+	}
+
+	static void dispatchFinished(RequestMetrics metrics) {
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onRequestFinished(metrics);
+			}
+			catch (RuntimeException e) { }
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package us.beacondigital.utils.net;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * Outcome of a request that tells "no data" apart from the different ways a request can fail,
+ * returned by {@link WebRequest#executeForResult(org.apache.http.impl.client.AbstractHttpClient, String) executeForResult}
+ * and {@link WebRequest#readForResult(String) readForResult}
+ * @param <T> Type of the value read from the response
+ */
+public class WebRequestResult<T> {
+
+	public enum Failure {
+		/**
+		 * A 2xx or 3xx response was received
+		 */
+		None,
+		/**
+		 * The connection failed or was dropped
+		 */
+		Network,
+		/**
+		 * Connecting or reading took too long
+		 */
+		Timeout,
+		/**
+		 * Not sent because the host's circuit breaker is open
+		 */
+		CircuitOpen,
+		/**
+		 * The server answered with a 4xx or 5xx status
+		 */
+		HttpError,
+		/**
+		 * The request was aborted by the caller
+		 */
+		Cancelled
+	}
+
+	private final T value;
+	private final HttpResponse response;
+	private final Failure failure;
+	private final IOException exception;
+
+	WebRequestResult(T value, HttpResponse response, Failure failure, IOException exception) {
+		this.value = value;
+		this.response = response;
+		this.failure = failure;
+		this.exception = exception;
+	}
+
+	static <T> WebRequestResult<T> fromResponse(T value, HttpResponse response) {
+		int statusCode = response.getStatusLine().getStatusCode();
+		return new WebRequestResult<T>(value, response, statusCode >= 400 ? Failure.HttpError : Failure.None, null);
+	}
+
+	static <T> WebRequestResult<T> fromException(IOException exception, boolean aborted, boolean expired) {
+		return new WebRequestResult<T>(null, null, classify(exception, aborted, expired), exception);
+	}
+
+	static Failure classify(IOException exception, boolean aborted, boolean expired) {
+		Failure failure;
+		if (expired) {
+			failure = Failure.Timeout;
+		}
+		else if (aborted) {
+			failure = Failure.Cancelled;
+		}
+		else if (exception instanceof CircuitOpenException) {
+			failure = Failure.CircuitOpen;
+		}
+		else if (exception instanceof ConnectTimeoutException || exception instanceof SocketTimeoutException) {
+			failure = Failure.Timeout;
+		}
+		else {
+			failure = Failure.Network;
+		}
+		return failure;
+	}
+
+	public boolean isSuccess() { return failure == Failure.None; }
+
+	/**
+	 * Body of the response, also set for HttpError results so error documents can be inspected
+	 */
+	public T getValue() { return value; }
+
+	/**
+	 * The response, null unless one was received
+	 */
+	public HttpResponse getResponse() { return response; }
+
+	public Failure getFailure() { return failure; }
+
+	/**
+	 * The exception that ended the request, null unless the failure is Network, Timeout, CircuitOpen or Cancelled
+	 */
+	public IOException getException() { return exception; }
+
+	/**
+	 * Status code of the response, or -1 if no response was received
+	 */
+	public int getStatusCode() {
+		return response != null && response.getStatusLine() != null ? response.getStatusLine().getStatusCode() : -1;
+	}
+
+}
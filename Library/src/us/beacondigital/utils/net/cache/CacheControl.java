@@ -0,0 +1,116 @@
+package us.beacondigital.utils.net.cache;
+
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpMessage;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/**
+ * Parsed caching directives of a request or response, taken from the
+ * Cache-Control, Pragma, Expires, Date and Age headers
+ */
+public class CacheControl {
+
+	public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+	public static final String HEADER_PRAGMA = "Pragma";
+	public static final String HEADER_EXPIRES = "Expires";
+	public static final String HEADER_DATE = "Date";
+	public static final String HEADER_AGE = "Age";
+
+	private boolean noStore = false;
+	private boolean noCache = false;
+	private long maxAgeSeconds = -1;
+	private long expires = -1;
+	private long date = -1;
+	private long ageSeconds = 0;
+
+	private CacheControl() { }
+
+	/**
+	 * Parse the caching headers of a request or a response
+	 * @param message
+	 * @return
+	 */
+	public static CacheControl parse(HttpMessage message) {
+		CacheControl cacheControl = new CacheControl();
+		for (Header header : message.getHeaders(HEADER_CACHE_CONTROL)) {
+			for (HeaderElement element : header.getElements()) {
+				String name = element.getName();
+				if ("no-store".equalsIgnoreCase(name)) {
+					cacheControl.noStore = true;
+				}
+				else if ("no-cache".equalsIgnoreCase(name)) {
+					cacheControl.noCache = true;
+				}
+				else if ("max-age".equalsIgnoreCase(name)) {
+					cacheControl.maxAgeSeconds = parseSeconds(element.getValue());
+				}
+			}
+		}
+		for (Header header : message.getHeaders(HEADER_PRAGMA)) {
+			if ("no-cache".equalsIgnoreCase(header.getValue())) {
+				cacheControl.noCache = true;
+			}
+		}
+		cacheControl.expires = parseDate(message.getFirstHeader(HEADER_EXPIRES));
+		cacheControl.date = parseDate(message.getFirstHeader(HEADER_DATE));
+		Header age = message.getFirstHeader(HEADER_AGE);
+		if (age != null) {
+			cacheControl.ageSeconds = Math.max(0, parseSeconds(age.getValue()));
+		}
+		return cacheControl;
+	}
+
+	/**
+	 * How long in milliseconds a response stays fresh after it was received.
+	 * max-age takes precedence over Expires.  Responses without either, or marked no-cache,
+	 * have no freshness and are revalidated every time they are requested.
+	 * @return
+	 */
+	public long getFreshnessLifetime() {
+		long lifetime = 0;
+		if (noCache) {
+			lifetime = 0;
+		}
+		else if (maxAgeSeconds >= 0) {
+			lifetime = maxAgeSeconds * 1000;
+		}
+		else if (expires >= 0) {
+			// An invalid Expires value, such as "0", parses to -1 and means already expired
+			long base = date >= 0 ? date : System.currentTimeMillis();
+			lifetime = Math.max(0, expires - base);
+		}
+		lifetime -= ageSeconds * 1000;
+		return Math.max(0, lifetime);
+	}
+
+	public boolean isNoStore() { return noStore; }
+	public boolean isNoCache() { return noCache; }
+
+	private static long parseSeconds(String value) {
+		long seconds = -1;
+		if (value != null) {
+			try {
+				seconds = Long.parseLong(value.trim());
+			}
+			catch (NumberFormatException e) { }
+		}
+		return seconds;
+	}
+
+	private static long parseDate(Header header) {
+		long time = -1;
+		if (header != null) {
+			try {
+				Date parsed = DateUtils.parseDate(header.getValue());
+				time = parsed.getTime();
+			}
+			catch (DateParseException e) { }
+		}
+		return time;
+	}
+
+}
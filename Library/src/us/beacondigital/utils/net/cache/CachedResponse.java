@@ -0,0 +1,253 @@
+package us.beacondigital.utils.net.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * A response body and its headers as kept by a {@link ResponseCache}.
+ * Instances are immutable; revalidating creates a copy with updated headers.
+ */
+public class CachedResponse {
+
+	private static final int FORMAT_VERSION = 2;
+
+	public static final String HEADER_ETAG = "ETag";
+	public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	public static final String HEADER_VARY = "Vary";
+
+	private final int statusCode;
+	private final String reasonPhrase;
+	private final Header[] headers;
+	private final byte[] body;
+	private final long responseTime;
+	private final Header[] varyHeaders;
+	private final CacheControl cacheControl;
+
+	public CachedResponse(int statusCode, String reasonPhrase, Header[] headers, byte[] body, long responseTime) {
+		this(statusCode, reasonPhrase, headers, body, responseTime, new Header[0]);
+	}
+
+	/**
+	 * @param varyHeaders Values the request had for each header named by the response's Vary header,
+	 * see {@link #selectVaryHeaders(String[], HttpRequest)}
+	 */
+	public CachedResponse(int statusCode, String reasonPhrase, Header[] headers, byte[] body, long responseTime, Header[] varyHeaders) {
+		this.statusCode = statusCode;
+		this.reasonPhrase = reasonPhrase;
+		this.headers = headers;
+		this.body = body;
+		this.responseTime = responseTime;
+		this.varyHeaders = varyHeaders;
+		this.cacheControl = CacheControl.parse(toHttpResponse());
+	}
+
+	/**
+	 * Copy of this response with headers replaced by those sent with a 304 Not Modified
+	 * @param notModified
+	 * @param responseTime
+	 * @return
+	 */
+	public CachedResponse revalidated(HttpResponse notModified, long responseTime) {
+		List<Header> merged = new ArrayList<Header>();
+		for (Header header : headers) {
+			if (!notModified.containsHeader(header.getName())) {
+				merged.add(header);
+			}
+		}
+		for (Header header : notModified.getAllHeaders()) {
+			if (isStoredHeader(header.getName())) {
+				merged.add(header);
+			}
+		}
+		return new CachedResponse(statusCode, reasonPhrase, merged.toArray(new Header[merged.size()]), body, responseTime, varyHeaders);
+	}
+
+	/**
+	 * A stored response only answers a request that sends the same values for
+	 * the headers it varies on.  A response that varies on "*" never matches.
+	 * @param request
+	 * @return
+	 */
+	public boolean matches(HttpRequest request) {
+		String[] names = getVaryNames(headers);
+		if (names == null) {
+			return false;
+		}
+		Header[] current = selectVaryHeaders(names, request);
+		if (current.length != varyHeaders.length) {
+			return false;
+		}
+		for (int i = 0; i < current.length; i++) {
+			if (!current[i].getName().equalsIgnoreCase(varyHeaders[i].getName()) ||
+					!current[i].getValue().equals(varyHeaders[i].getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Header names listed by the Vary headers
+	 * @param headers Response headers
+	 * @return The names, empty when the response does not vary, or null if it varies on "*"
+	 */
+	public static String[] getVaryNames(Header[] headers) {
+		List<String> names = new ArrayList<String>();
+		for (Header header : headers) {
+			if (HEADER_VARY.equalsIgnoreCase(header.getName()) && header.getValue() != null) {
+				for (String name : header.getValue().split(",")) {
+					name = name.trim();
+					if (name.equals("*")) {
+						return null;
+					}
+					if (name.length() > 0) {
+						names.add(name);
+					}
+				}
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * The request's values for the named headers, one header per name with
+	 * repeated values joined by commas and missing headers as an empty value
+	 * @param names
+	 * @param request
+	 * @return
+	 */
+	public static Header[] selectVaryHeaders(String[] names, HttpRequest request) {
+		Header[] selected = new Header[names.length];
+		for (int i = 0; i < names.length; i++) {
+			StringBuilder value = new StringBuilder();
+			for (Header header : request.getHeaders(names[i])) {
+				if (value.length() > 0) {
+					value.append(',');
+				}
+				value.append(header.getValue() != null ? header.getValue().trim() : "");
+			}
+			selected[i] = new BasicHeader(names[i], value.toString());
+		}
+		return selected;
+	}
+
+	/**
+	 * A response is fresh while its age is less than the freshness lifetime from its caching headers
+	 * @param now
+	 * @return
+	 */
+	public boolean isFresh(long now) {
+		long age = Math.max(0, now - responseTime);
+		return age < cacheControl.getFreshnessLifetime();
+	}
+
+	public boolean hasValidators() {
+		return getETag() != null || getLastModified() != null;
+	}
+
+	public String getETag() { return getHeaderValue(HEADER_ETAG); }
+	public String getLastModified() { return getHeaderValue(HEADER_LAST_MODIFIED); }
+	public int getStatusCode() { return statusCode; }
+	public Header[] getHeaders() { return headers; }
+	public byte[] getBody() { return body; }
+	public long getResponseTime() { return responseTime; }
+	public Header[] getVaryHeaders() { return varyHeaders; }
+
+	public CacheControl getCacheControl() { return cacheControl; }
+
+	/**
+	 * Build a new response object serving the stored body.  Each call returns a new
+	 * response so callers can consume the entity independently.
+	 * @return
+	 */
+	public HttpResponse toHttpResponse() {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, reasonPhrase);
+		response.setHeaders(headers);
+		ByteArrayEntity entity = new ByteArrayEntity(body);
+		entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+		response.setEntity(entity);
+		return response;
+	}
+
+	private String getHeaderValue(String name) {
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Headers describing the transfer rather than the content are not stored
+	 * since the stored body is served decoded and with a known length
+	 * @param name
+	 * @return
+	 */
+	public static boolean isStoredHeader(String name) {
+		return
+				!HTTP.CONTENT_LEN.equalsIgnoreCase(name) &&
+				!HTTP.TRANSFER_ENCODING.equalsIgnoreCase(name) &&
+				!HTTP.CONTENT_ENCODING.equalsIgnoreCase(name) &&
+				!HTTP.CONN_DIRECTIVE.equalsIgnoreCase(name);
+	}
+
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(statusCode);
+		out.writeUTF(reasonPhrase != null ? reasonPhrase : "");
+		out.writeLong(responseTime);
+		out.writeInt(headers.length);
+		for (Header header : headers) {
+			out.writeUTF(header.getName());
+			out.writeUTF(header.getValue() != null ? header.getValue() : "");
+		}
+		out.writeInt(varyHeaders.length);
+		for (Header header : varyHeaders) {
+			out.writeUTF(header.getName());
+			out.writeUTF(header.getValue());
+		}
+		out.writeInt(body.length);
+		out.write(body);
+	}
+
+	/**
+	 * Read a response written by {@link #writeTo(DataOutputStream)}
+	 * @param in
+	 * @return
+	 * @throws IOException If the data is truncated or was written by an incompatible version
+	 */
+	public static CachedResponse readFrom(DataInputStream in) throws IOException {
+		if (in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Unsupported cache entry version");
+		}
+		int statusCode = in.readInt();
+		String reasonPhrase = in.readUTF();
+		long responseTime = in.readLong();
+		int headerCount = in.readInt();
+		Header[] headers = new Header[headerCount];
+		for (int i = 0; i < headerCount; i++) {
+			headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+		}
+		Header[] varyHeaders = new Header[in.readInt()];
+		for (int i = 0; i < varyHeaders.length; i++) {
+			varyHeaders[i] = new BasicHeader(in.readUTF(), in.readUTF());
+		}
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new CachedResponse(statusCode, reasonPhrase, headers, body, responseTime, varyHeaders);
+	}
+
+}
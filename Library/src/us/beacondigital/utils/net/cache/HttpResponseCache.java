@@ -0,0 +1,215 @@
+package us.beacondigital.utils.net.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import us.beacondigital.utils.Encrypt;
+import us.beacondigital.utils.IOUtils;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Default {@link ResponseCache} that keeps recently used responses in an in-memory LRU
+ * and, when given a directory, every response on disk so they survive process restarts.
+ * Memory and disk are both limited by the number of body bytes they hold.
+ */
+public class HttpResponseCache implements ResponseCache {
+
+	private static final String FILE_SUFFIX = ".http";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final MemCache memCache;
+	private final File directory;
+	private final long maxDiskBytes;
+	private long diskBytes = -1;
+
+	/**
+	 * Memory only cache
+	 * @param maxMemoryBytes
+	 */
+	public HttpResponseCache(int maxMemoryBytes) {
+		this(maxMemoryBytes, null, 0);
+	}
+
+	/**
+	 * @param maxMemoryBytes Body bytes to keep in memory
+	 * @param directory Directory for the disk store, or null for a memory only cache
+	 * @param maxDiskBytes Size the disk store is trimmed to, oldest entries first
+	 */
+	public HttpResponseCache(int maxMemoryBytes, File directory, long maxDiskBytes) {
+		this.memCache = new MemCache(maxMemoryBytes);
+		this.directory = directory;
+		this.maxDiskBytes = maxDiskBytes;
+		if (directory != null) {
+			directory.mkdirs();
+		}
+	}
+
+	public CachedResponse get(String key) {
+		CachedResponse response = memCache.get(key);
+		if (response == null && directory != null) {
+			response = readFromDisk(key);
+			if (response != null) {
+				memCache.put(key, response);
+			}
+		}
+		return response;
+	}
+
+	public void put(String key, CachedResponse response) {
+		memCache.put(key, response);
+		if (directory != null) {
+			writeToDisk(key, response);
+		}
+	}
+
+	public void remove(String key) {
+		memCache.remove(key);
+		if (directory != null) {
+			File file = getFile(key);
+			synchronized (this) {
+				long length = file.length();
+				if (file.delete() && diskBytes >= 0) {
+					diskBytes -= length;
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		memCache.evictAll();
+		if (directory != null) {
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.getName().endsWith(FILE_SUFFIX) || file.getName().endsWith(TEMP_SUFFIX)) {
+						file.delete();
+					}
+				}
+			}
+			diskBytes = 0;
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(directory, Encrypt.md5(key) + FILE_SUFFIX);
+	}
+
+	private CachedResponse readFromDisk(String key) {
+		CachedResponse response = null;
+		File file = getFile(key);
+		if (file.exists()) {
+			long modified = file.lastModified();
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				response = CachedResponse.readFrom(in);
+			}
+			catch (IOException e) {
+				// Truncated or stale format, drop it unless it was replaced meanwhile
+				synchronized (this) {
+					long length = file.length();
+					if (file.lastModified() == modified && file.delete() && diskBytes >= 0) {
+						diskBytes -= length;
+					}
+				}
+			}
+			finally {
+				IOUtils.safeClose(in);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * The response is written to a temporary file which is then renamed over the entry,
+	 * so unsynchronized readers see either the previous response or the new one, never a partial write
+	 * @param key
+	 * @param response
+	 */
+	private synchronized void writeToDisk(String key, CachedResponse response) {
+		File file = getFile(key);
+		File temp = new File(directory, file.getName() + TEMP_SUFFIX);
+		long previousLength = file.length();
+		DataOutputStream out = null;
+		boolean success = false;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			response.writeTo(out);
+			out.flush();
+			success = true;
+		}
+		catch (IOException e) { }
+		finally {
+			IOUtils.safeClose(out);
+		}
+
+		if (success) {
+			success = temp.renameTo(file);
+		}
+		if (!success) {
+			temp.delete();
+			if (file.delete() && diskBytes >= 0) {
+				diskBytes -= previousLength;
+			}
+		}
+		else if (diskBytes >= 0) {
+			diskBytes += file.length() - previousLength;
+		}
+		trimDisk();
+	}
+
+	/**
+	 * Remove the least recently written files until the store fits its budget.
+	 * The directory is only scanned once to learn its size, after that it is tracked on every write.
+	 */
+	private void trimDisk() {
+		if (diskBytes < 0) {
+			diskBytes = 0;
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					diskBytes += file.length();
+				}
+			}
+		}
+		if (maxDiskBytes > 0 && diskBytes > maxDiskBytes) {
+			File[] files = directory.listFiles();
+			if (files != null) {
+				Arrays.sort(files, new Comparator<File>() {
+					public int compare(File lhs, File rhs) {
+						long l = lhs.lastModified(), r = rhs.lastModified();
+						return l < r ? -1 : (l == r ? 0 : 1);
+					}
+				});
+				for (int i = 0; i < files.length && diskBytes > maxDiskBytes; i++) {
+					long length = files[i].length();
+					if (files[i].delete()) {
+						diskBytes -= length;
+					}
+				}
+			}
+		}
+	}
+
+	private static class MemCache extends LruCache<String, CachedResponse> {
+
+		public MemCache(int maxSizeBytes) {
+			super(maxSizeBytes);
+		}
+
+		@Override
+		protected int sizeOf(String key, CachedResponse value) {
+			return value.getBody().length;
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package us.beacondigital.utils.net.cache;
+
+/**
+ * Storage used by {@link us.beacondigital.utils.net.WebRequestCache} to keep responses between requests.
+ * Implementations must be safe to call from multiple threads.
+ */
+public interface ResponseCache {
+
+	/**
+	 * @param key Request URI
+	 * @return The stored response or null if there is none
+	 */
+	CachedResponse get(String key);
+
+	void put(String key, CachedResponse response);
+
+	void remove(String key);
+
+	void clear();
+
+}
@@ -0,0 +1,31 @@
+package us.beacondigital.samples.test;
+
+import us.beacondigital.utils.image.BitmapDecoder;
+import android.test.AndroidTestCase;
+
+public class BitmapDecoderTests extends AndroidTestCase {
+
+	public void testNoTargetKeepsFullSize() {
+		assertEquals(1, BitmapDecoder.calculateInSampleSize(4000, 3000, 0, 0));
+		assertEquals("Unknown dimensions should decode at full size", 1, BitmapDecoder.calculateInSampleSize(-1, -1, 100, 100));
+	}
+
+	public void testSmallerImageIsNotSampled() {
+		assertEquals(1, BitmapDecoder.calculateInSampleSize(100, 100, 200, 200));
+		assertEquals(1, BitmapDecoder.calculateInSampleSize(200, 200, 200, 200));
+	}
+
+	public void testDecodedSizeCoversTarget() {
+		assertEquals(2, BitmapDecoder.calculateInSampleSize(400, 400, 200, 200));
+		assertEquals(4, BitmapDecoder.calculateInSampleSize(4000, 3000, 720, 720));
+		assertEquals("Both dimensions should still cover the target", 4,
+				BitmapDecoder.calculateInSampleSize(4000, 1000, 100, 250));
+	}
+
+	public void testSingleDimensionTarget() {
+		assertEquals("Only the width should constrain the sample size", 8,
+				BitmapDecoder.calculateInSampleSize(1600, 100, 200, 0));
+		assertEquals(16, BitmapDecoder.calculateInSampleSize(100, 1600, 0, 100));
+	}
+
+}
@@ -0,0 +1,88 @@
+package us.beacondigital.samples.test;
+
+import us.beacondigital.utils.image.BitmapPool;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+public class BitmapPoolTests extends AndroidTestCase {
+
+	private static final int KITKAT = 19;
+
+	public void testUnmanagedBitmapsAreNeverPooled() {
+		BitmapPool pool = new BitmapPool(1024 * 1024);
+		Bitmap bitmap = Bitmap.createBitmap(10, 10, Config.ARGB_8888);
+		pool.retain(bitmap);
+		pool.release(bitmap);
+		pool.release(bitmap);
+		assertEquals(0, pool.getCount());
+		assertNull(pool.get(10, 10, Config.ARGB_8888, 1));
+		assertEquals(1, pool.getMissCount());
+	}
+
+	public void testPooledOnlyAfterLastRelease() {
+		if (!BitmapPool.isSupported())
+			return;
+		BitmapPool pool = new BitmapPool(1024 * 1024);
+		Bitmap bitmap = Bitmap.createBitmap(10, 10, Config.ARGB_8888);
+		pool.manage(bitmap);
+		pool.retain(bitmap);
+
+		// Evicted from the cache but still displayed
+		pool.release(bitmap);
+		assertEquals("A displayed bitmap should not be reused", 0, pool.getCount());
+		assertNull(pool.get(10, 10, Config.ARGB_8888, 1));
+
+		pool.release(bitmap);
+		assertEquals(1, pool.getCount());
+		assertEquals(400, pool.getSize());
+		assertSame(bitmap, pool.get(10, 10, Config.ARGB_8888, 1));
+		assertEquals(1, pool.getHitCount());
+		assertEquals(0, pool.getCount());
+		assertEquals(0, pool.getSize());
+	}
+
+	public void testSizeMatching() {
+		if (!BitmapPool.isSupported())
+			return;
+		BitmapPool pool = new BitmapPool(1024 * 1024);
+		Bitmap bitmap = Bitmap.createBitmap(20, 10, Config.ARGB_8888);
+		pool.manage(bitmap);
+		pool.release(bitmap);
+
+		assertNull("A much larger bitmap should not be handed out", pool.get(4, 4, Config.ARGB_8888, 1));
+		if (Build.VERSION.SDK_INT >= KITKAT) {
+			assertSame("Any bitmap with enough bytes should fit", bitmap, pool.get(10, 20, Config.ARGB_8888, 1));
+		}
+		else {
+			assertNull("Dimensions must match exactly", pool.get(10, 20, Config.ARGB_8888, 1));
+			assertNull("Sampled decodes can't reuse bitmaps", pool.get(40, 20, Config.ARGB_8888, 2));
+			assertSame(bitmap, pool.get(20, 10, Config.ARGB_8888, 1));
+		}
+	}
+
+	public void testOldestDroppedBeyondMaxSize() {
+		if (!BitmapPool.isSupported())
+			return;
+		BitmapPool pool = new BitmapPool(1000);
+		Bitmap first = Bitmap.createBitmap(10, 10, Config.ARGB_8888);
+		Bitmap second = Bitmap.createBitmap(10, 10, Config.ARGB_8888);
+		Bitmap third = Bitmap.createBitmap(10, 10, Config.ARGB_8888);
+		for (Bitmap bitmap : new Bitmap[] { first, second, third }) {
+			pool.manage(bitmap);
+			pool.release(bitmap);
+		}
+		assertEquals(2, pool.getCount());
+		assertEquals(1, pool.getEvictionCount());
+		assertSame("Most recently pooled bitmaps should be used first", third, pool.get(10, 10, Config.ARGB_8888, 1));
+		assertSame(second, pool.get(10, 10, Config.ARGB_8888, 1));
+		assertNull(pool.get(10, 10, Config.ARGB_8888, 1));
+
+		pool.manage(first);
+		pool.release(first);
+		pool.clear();
+		assertEquals(0, pool.getSize());
+	}
+
+}
@@ -0,0 +1,52 @@
+package us.beacondigital.samples.test;
+
+import java.nio.ByteBuffer;
+
+import us.beacondigital.utils.ByteBufferPool;
+import android.test.AndroidTestCase;
+
+public class ByteBufferPoolTests extends AndroidTestCase {
+
+	public void testReuse() {
+		ByteBufferPool pool = new ByteBufferPool(2, 1024 * 1024);
+		ByteBuffer buffer = pool.get(1000);
+		assertEquals(0, buffer.position());
+		assertEquals(1000, buffer.limit());
+		assertTrue("Capacity should be rounded up for reuse", buffer.capacity() >= 16 * 1024);
+		pool.put(buffer);
+
+		ByteBuffer reused = pool.get(2000);
+		assertSame("A pooled buffer that fits should be reused", buffer, reused);
+		assertEquals(2000, reused.limit());
+		assertEquals(1, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+	}
+
+	public void testSmallestFittingBuffer() {
+		ByteBufferPool pool = new ByteBufferPool(3, 1024 * 1024);
+		ByteBuffer small = ByteBuffer.allocate(100);
+		ByteBuffer large = ByteBuffer.allocate(100000);
+		pool.put(large);
+		pool.put(small);
+		assertSame(small, pool.get(50));
+		assertSame(large, pool.get(50));
+		assertNotSame("Too small buffers shouldn't be used", small, pool.get(200000));
+	}
+
+	public void testLimits() {
+		ByteBufferPool pool = new ByteBufferPool(2, 1000);
+		pool.put(ByteBuffer.allocate(2000));
+		assertEquals("Buffers over the size limit shouldn't be pooled", 0, pool.getCount());
+		pool.put(ByteBuffer.allocateDirect(100));
+		assertEquals("Buffers without an array shouldn't be pooled", 0, pool.getCount());
+
+		pool.put(ByteBuffer.allocate(100));
+		pool.put(ByteBuffer.allocate(200));
+		ByteBuffer largest = ByteBuffer.allocate(300);
+		pool.put(largest);
+		assertEquals(2, pool.getCount());
+		assertEquals("The smallest buffer should be dropped", 200, pool.get(150).capacity());
+		assertSame(largest, pool.get(250));
+	}
+
+}
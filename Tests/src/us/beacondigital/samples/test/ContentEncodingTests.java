@@ -0,0 +1,76 @@
+package us.beacondigital.samples.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+
+import us.beacondigital.utils.StringUtils;
+import us.beacondigital.utils.net.ContentEncodingInterceptor;
+import us.beacondigital.utils.net.ContentEncodingStats;
+import android.test.AndroidTestCase;
+
+public class ContentEncodingTests extends AndroidTestCase {
+	
+	private static final String BODY = "{\"data\":\"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\"}\n";
+	
+	public void testAcceptEncodingHeader() throws HttpException, IOException {
+		ContentEncodingInterceptor interceptor = new ContentEncodingInterceptor();
+		
+		BasicHttpRequest request = new BasicHttpRequest("GET", "http://beacondigital.us");
+		interceptor.process(request, null);
+		assertEquals("Requests should ask for compressed responses", "gzip, deflate", request.getFirstHeader("Accept-Encoding").getValue());
+		
+		request = new BasicHttpRequest("GET", "http://beacondigital.us");
+		request.addHeader("Accept-Encoding", "identity");
+		interceptor.process(request, null);
+		assertEquals("An explicit Accept-Encoding should be left alone", "identity", request.getFirstHeader("Accept-Encoding").getValue());
+	}
+	
+	public void testGzipResponse() throws IOException, HttpException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+		gzip.write(BODY.getBytes());
+		gzip.close();
+		
+		ContentEncodingStats.reset();
+		HttpResponse response = decode(compressed.toByteArray(), "gzip");
+		assertEquals("Gzip body should be decoded", BODY, StringUtils.readStream(response));
+		assertNull("Content-Encoding should be removed once decoded", response.getFirstHeader("Content-Encoding"));
+		assertEquals(compressed.size(), ContentEncodingStats.getCompressedBytes());
+		assertEquals(BODY.length(), ContentEncodingStats.getDecompressedBytes());
+	}
+	
+	public void testDeflateResponse() throws IOException, HttpException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		DeflaterOutputStream deflate = new DeflaterOutputStream(compressed);
+		deflate.write(BODY.getBytes());
+		deflate.close();
+		
+		HttpResponse response = decode(compressed.toByteArray(), "deflate");
+		assertEquals("Deflate body should be decoded", BODY, StringUtils.readStream(response));
+	}
+	
+	public void testEmptyResponse() throws IOException, HttpException {
+		assertEquals("Empty gzip body should read as empty", "", StringUtils.readStream(decode(new byte[0], "gzip")));
+		assertEquals("Empty deflate body should read as empty", "", StringUtils.readStream(decode(new byte[0], "deflate")));
+	}
+	
+	private HttpResponse decode(byte[] body, String encoding) throws HttpException, IOException {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		ByteArrayEntity entity = new ByteArrayEntity(body);
+		entity.setContentEncoding(encoding);
+		response.setEntity(entity);
+		response.setHeader("Content-Encoding", encoding);
+		new ContentEncodingInterceptor().process(response, null);
+		return response;
+	}
+
+}
@@ -0,0 +1,361 @@
+package us.beacondigital.samples.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import us.beacondigital.utils.ByteBufferPool;
+import us.beacondigital.utils.IOUtils;
+import us.beacondigital.utils.image.DiskCache;
+import android.test.AndroidTestCase;
+
+public class DiskCacheTests extends AndroidTestCase {
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("diskcache", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(directory);
+		super.tearDown();
+	}
+
+	public void testPutAndGet() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		assertNull("Nothing should be cached yet", cache.get("a.jpg"));
+		assertTrue(cache.put("a.jpg", bytes(10, 1)));
+		assertTrue(Arrays.equals(bytes(10, 1), read(cache, "a.jpg")));
+		assertEquals(10, cache.getSize());
+		assertEquals(1, cache.getEntryCount());
+
+		assertTrue("Replacing an entry should work", cache.put("a.jpg", bytes(20, 2)));
+		assertTrue(Arrays.equals(bytes(20, 2), read(cache, "a.jpg")));
+		assertEquals("Size should track the replacement", 20, cache.getSize());
+
+		assertTrue(cache.remove("a.jpg"));
+		assertNull(cache.get("a.jpg"));
+		assertEquals(0, cache.getSize());
+		assertEquals("Entry file should be deleted", 0, countEntryFiles(directory));
+	}
+
+	public void testRead() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024 * 1024);
+		cache.put("a", bytes(50000, 1));
+		ByteBuffer exact = cache.read("a", null);
+		assertEquals(50000, exact.capacity());
+		assertTrue(Arrays.equals(bytes(50000, 1), exact.array()));
+
+		ByteBufferPool pool = new ByteBufferPool(1, 1024 * 1024);
+		ByteBuffer buffer = cache.read("a", pool);
+		assertEquals(0, buffer.position());
+		assertEquals(50000, buffer.remaining());
+		pool.put(buffer);
+		cache.put("b", bytes(10, 2));
+		assertSame("The pooled buffer should be read into again", buffer, cache.read("b", pool));
+		assertEquals(10, buffer.remaining());
+		assertEquals(2, buffer.get(0));
+		assertNull(cache.read("missing", pool));
+	}
+
+	public void testAnyKeyCanBeStored() throws IOException {
+		String[] keys = { "John Smith_avatar", "a/b.jpg", "line\nbreak", "100%20 done", "CLEAN a b 1 jpeg" };
+		DiskCache cache = new DiskCache(directory, 1024);
+		assertFalse(DiskCache.isValidKey(""));
+		assertNull("Empty keys can't be written", cache.edit(""));
+		for (int i = 0; i < keys.length; i++) {
+			assertTrue("Key should be writable: " + keys[i], cache.put(keys[i], bytes(10, i)));
+		}
+		cache.close();
+
+		DiskCache reopened = new DiskCache(directory, 1024);
+		assertEquals(keys.length, reopened.getEntryCount());
+		for (int i = 0; i < keys.length; i++) {
+			assertTrue("Key should survive the journal: " + keys[i], Arrays.equals(bytes(10, i), read(reopened, keys[i])));
+		}
+		reopened.close();
+
+		assertTrue(new File(directory, "journal").delete());
+		DiskCache rebuilt = new DiskCache(directory, 1024);
+		assertEquals(keys.length, rebuilt.getEntryCount());
+		for (int i = 0; i < keys.length; i++) {
+			assertTrue("Key should survive the sidecar: " + keys[i], Arrays.equals(bytes(10, i), read(rebuilt, keys[i])));
+		}
+	}
+
+	public void testLeastRecentlyUsedEviction() throws IOException {
+		DiskCache cache = new DiskCache(directory, 30);
+		cache.put("a", bytes(10, 1));
+		cache.put("b", bytes(10, 2));
+		cache.put("c", bytes(10, 3));
+		// Touch a so b becomes the least recently used
+		IOUtils.safeClose(cache.get("a"));
+		cache.put("d", bytes(10, 4));
+
+		assertNull("Least recently used entry should be evicted", cache.get("b"));
+		assertNotNull(read(cache, "a"));
+		assertNotNull(read(cache, "c"));
+		assertNotNull(read(cache, "d"));
+		assertEquals(30, cache.getSize());
+
+		cache.setMaxSize(10);
+		assertEquals("Shrinking the budget should evict", 10, cache.getSize());
+		assertEquals(1, cache.getEntryCount());
+	}
+
+	public void testStatistics() throws IOException {
+		DiskCache cache = new DiskCache(directory, 20);
+		cache.put("a", bytes(10, 1));
+		assertNull(cache.get("b"));
+		read(cache, "a");
+		read(cache, "a");
+		cache.put("b", bytes(10, 2));
+		cache.put("c", bytes(10, 3));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals("Least recently used entry should be counted as evicted", 1, cache.getEvictionCount());
+	}
+
+	public void testJournalSurvivesReopen() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.put("a", bytes(10, 1));
+		cache.put("b", bytes(20, 2));
+		cache.remove("a");
+		cache.close();
+
+		// A file the journal doesn't know about should not be picked up when the journal is intact
+		write(new File(directory, "stray"), bytes(5, 0));
+
+		DiskCache reopened = new DiskCache(directory, 1024);
+		assertEquals(20, reopened.getSize());
+		assertEquals(1, reopened.getEntryCount());
+		assertNull(reopened.get("a"));
+		assertNull("The index should come from the journal, not a directory scan", reopened.get("stray"));
+		assertTrue(Arrays.equals(bytes(20, 2), read(reopened, "b")));
+	}
+
+	public void testIncompleteWriteDiscarded() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.put("a", bytes(10, 1));
+		DiskCache.Editor editor = cache.edit("partial");
+		OutputStream out = editor.newOutputStream();
+		out.write(bytes(7, 9));
+		out.close();
+		assertNull("Uncommitted entries should not be readable", cache.get("partial"));
+		// Simulate a crash before commit by abandoning the cache
+		cache.close();
+
+		DiskCache reopened = new DiskCache(directory, 1024);
+		assertNull(reopened.get("partial"));
+		assertEquals("Partial file should be deleted on open", 1, countEntryFiles(directory));
+		assertEquals(10, reopened.getSize());
+	}
+
+	public void testReplacementIsAtomic() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.put("a", bytes(10, 1));
+		DiskCache.Editor editor = cache.edit("a");
+		assertNull("Only one writer per key", cache.edit("a"));
+		OutputStream out = editor.newOutputStream();
+		out.write(bytes(20, 2));
+		out.close();
+		assertTrue("Previous value should be readable until commit", Arrays.equals(bytes(10, 1), read(cache, "a")));
+
+		editor.commit();
+		assertTrue(Arrays.equals(bytes(20, 2), read(cache, "a")));
+		assertEquals(20, cache.getSize());
+		assertEquals("Temp file should be gone", 1, countEntryFiles(directory));
+
+		editor = cache.edit("a");
+		out = editor.newOutputStream();
+		out.write(bytes(5, 3));
+		out.close();
+		editor.abort();
+		assertTrue("Aborting should keep the previous value", Arrays.equals(bytes(20, 2), read(cache, "a")));
+		assertEquals(20, cache.getSize());
+	}
+
+	public void testInterruptedReplacementKeepsPreviousValue() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.put("a", bytes(10, 1));
+		DiskCache.Editor editor = cache.edit("a");
+		OutputStream out = editor.newOutputStream();
+		out.write(bytes(20, 2));
+		out.close();
+		cache.close();
+
+		DiskCache reopened = new DiskCache(directory, 1024);
+		assertTrue(Arrays.equals(bytes(10, 1), read(reopened, "a")));
+		assertEquals(10, reopened.getSize());
+		assertEquals("Temp file should be deleted on open", 1, countEntryFiles(directory));
+	}
+
+	public void testTruncatedFileNotServed() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.setSyncPolicy(DiskCache.SyncPolicy.Commit);
+		cache.put("a", bytes(10, 1));
+		assertTrue(Arrays.equals(bytes(10, 1), read(cache, "a")));
+
+		// As left by a crash before the data reached the disk
+		write(findEntryFile(directory), bytes(4, 1));
+		assertNull("Incomplete files should not be read", cache.get("a"));
+		assertEquals(0, cache.getSize());
+		assertEquals(0, countEntryFiles(directory));
+	}
+
+	public void testHashedLayout() throws IOException {
+		StringBuilder longKey = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			longKey.append("Long_description_\u00e9t\u00e9_");
+		}
+		String key = longKey.append(".jpg").toString();
+
+		DiskCache cache = new DiskCache(directory, 1024 * 1024);
+		assertTrue("Keys longer than a file name should be cached", cache.put(key, bytes(10, 1)));
+		assertTrue(Arrays.equals(bytes(10, 1), read(cache, key)));
+
+		File[] shards = directory.listFiles();
+		int shardCount = 0;
+		for (File file : shards) {
+			if (file.isDirectory()) {
+				shardCount++;
+				assertEquals("Shards should be named by two hex digits", 2, file.getName().length());
+				String[] names = file.list();
+				assertEquals("Each file should have a sidecar", 2, names.length);
+			}
+			else {
+				assertTrue("Only the journal should be at the top", file.getName().startsWith("journal"));
+			}
+		}
+		assertEquals(1, shardCount);
+		cache.close();
+
+		DiskCache reopened = new DiskCache(directory, 1024 * 1024);
+		assertTrue("Keys should survive the journal", Arrays.equals(bytes(10, 1), read(reopened, key)));
+	}
+
+	public void testRebuildFromSidecars() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.put("a", bytes(10, 1));
+		cache.put("b", bytes(20, 2));
+		cache.close();
+		assertTrue(new File(directory, "journal").delete());
+
+		DiskCache reopened = new DiskCache(directory, 1024);
+		assertEquals(2, reopened.getEntryCount());
+		assertEquals(30, reopened.getSize());
+		assertTrue(Arrays.equals(bytes(20, 2), read(reopened, "b")));
+		assertTrue(Arrays.equals(bytes(10, 1), read(reopened, "a")));
+	}
+
+	public void testRebuildWithoutJournal() throws IOException {
+		// A directory written before there was a journal, or whose journal was corrupted
+		write(new File(directory, "old1.jpg"), bytes(10, 1));
+		write(new File(directory, "old2.jpg"), bytes(15, 2));
+		write(new File(directory, "journal"), "garbage\n".getBytes());
+
+		DiskCache cache = new DiskCache(directory, 1024);
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(25, cache.getSize());
+		assertTrue(Arrays.equals(bytes(15, 2), read(cache, "old2.jpg")));
+		assertFalse("Old files should move into the hashed layout", new File(directory, "old1.jpg").exists());
+		assertEquals(2, countEntryFiles(directory));
+	}
+
+	public void testClear() throws IOException {
+		DiskCache cache = new DiskCache(directory, 1024);
+		cache.put("a", bytes(10, 1));
+		cache.clear();
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get("a"));
+		cache.put("b", bytes(5, 1));
+		assertEquals("Cache should be usable after clearing", 5, cache.getSize());
+	}
+
+	private static byte[] bytes(int length, int value) {
+		byte[] data = new byte[length];
+		Arrays.fill(data, (byte) value);
+		return data;
+	}
+
+	private static byte[] read(DiskCache cache, String key) throws IOException {
+		InputStream in = cache.get(key);
+		if (in == null)
+			return null;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[256];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Cached files anywhere under the directory, not counting sidecars and the journal
+	 */
+	private static int countEntryFiles(File directory) {
+		int count = 0;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory())
+					count += countEntryFiles(file);
+				else if (!file.getName().endsWith(".meta") && !file.getName().startsWith("journal"))
+					count++;
+			}
+		}
+		return count;
+	}
+
+	private static File findEntryFile(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				File found = file.isDirectory() ? findEntryFile(file) : null;
+				if (found != null)
+					return found;
+				else if (file.isFile() && !file.getName().endsWith(".meta") && !file.getName().startsWith("journal"))
+					return file;
+			}
+		}
+		return null;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static void write(File file, byte[] data) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+}
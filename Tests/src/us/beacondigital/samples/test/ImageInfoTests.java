@@ -0,0 +1,61 @@
+package us.beacondigital.samples.test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import us.beacondigital.utils.image.ImageInfo;
+import us.beacondigital.utils.image.ImageInfo.Extension;
+import us.beacondigital.utils.image.ImageInfo.ImageDescriptor;
+import android.test.AndroidTestCase;
+
+public class ImageInfoTests extends AndroidTestCase {
+
+	public void testKey() {
+		ImageInfo info = new ImageInfo(ImageDescriptor.create(42, "User", "Jane  Doe"), "http://example.com/a/photo.JPEG?size=large");
+		assertEquals("User_Jane_Doe_42.jpg", info.toString());
+		assertSame("The key should only be built once", info.toString(), info.toString());
+
+		info = new ImageInfo(ImageDescriptor.create("abc", "Project"), "http://example.com/avatar", Extension.Png);
+		assertEquals("Project_abc.png", info.toString());
+
+		info = new ImageInfo(ImageDescriptor.create("Logo"), "http://example.com/avatar");
+		assertEquals("Logo_0.none", info.toString());
+	}
+
+	public void testThumbnail() {
+		ImageInfo info = new ImageInfo(ImageDescriptor.create(42, "User"), "http://example.com/photo.jpg");
+		assertFalse(info.hasThumbnail());
+
+		info.setThumbnailUrl("http://example.com/photo_small.jpg");
+		ImageInfo thumbnail = info.getThumbnail();
+		assertEquals("Thumbnails should be cached under their own key", "User_thumb_42.jpg", thumbnail.toString());
+		assertEquals("http://example.com/photo_small.jpg", thumbnail.getUrl());
+		assertFalse(thumbnail.equals(info));
+
+		info.setThumbnailSize(64, 48);
+		thumbnail = info.getThumbnail();
+		assertTrue("A size variant should share the image's file", thumbnail.equals(info));
+		assertEquals(info.getUrl(), thumbnail.getUrl());
+		assertEquals(64, thumbnail.getTargetWidth());
+		assertEquals(48, thumbnail.getTargetHeight());
+	}
+
+	public void testEqualsAndHashCode() {
+		ImageInfo lower = new ImageInfo(ImageDescriptor.create(1, "user"), "http://example.com/a.jpg");
+		ImageInfo upper = new ImageInfo(ImageDescriptor.create(1, "USER"), "http://example.com/b.jpg");
+		ImageInfo other = new ImageInfo(ImageDescriptor.create(2, "user"), "http://example.com/a.jpg");
+
+		assertTrue("Keys should compare ignoring case", lower.equals(upper));
+		assertEquals(lower.hashCode(), upper.hashCode());
+		assertFalse(lower.equals(other));
+		assertFalse(lower.equals(lower.toString()));
+		assertFalse(lower.equals(null));
+
+		Set<ImageInfo> set = new HashSet<ImageInfo>();
+		set.add(lower);
+		set.add(upper);
+		set.add(other);
+		assertEquals("Image infos should work as map keys", 2, set.size());
+	}
+
+}
@@ -0,0 +1,61 @@
+package us.beacondigital.samples.test;
+
+import us.beacondigital.utils.LatencyHistogram;
+import android.test.AndroidTestCase;
+
+public class LatencyHistogramTests extends AndroidTestCase {
+
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals("Percentiles of an empty histogram should be 0", 0, histogram.getPercentile(50));
+		assertEquals(0.0, histogram.getMean());
+	}
+
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 8; i++) {
+			histogram.record(i);
+		}
+		assertEquals(8, histogram.getCount());
+		assertEquals("Values below 8 should have their own bucket", 3, histogram.getPercentile(50));
+		assertEquals(7, histogram.getPercentile(100));
+		assertEquals(3.5, histogram.getMean());
+	}
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getMax());
+		assertWithin("p50", 500, histogram.getPercentile(50));
+		assertWithin("p90", 900, histogram.getPercentile(90));
+		assertWithin("p99", 990, histogram.getPercentile(99));
+		assertEquals("Percentiles should never exceed the maximum", 1000, histogram.getPercentile(100));
+	}
+
+	public void testLargeAndNegativeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(2, histogram.getCount());
+		assertEquals("Negative values should be recorded as 0", 0, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+	}
+
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(42);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+	private static void assertWithin(String name, long expected, long actual) {
+		assertTrue(name + " should be within 12.5% of " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 8);
+	}
+
+}
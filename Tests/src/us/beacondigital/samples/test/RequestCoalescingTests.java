@@ -0,0 +1,101 @@
+package us.beacondigital.samples.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import us.beacondigital.utils.net.WebRequest;
+import us.beacondigital.utils.net.WebRequestFuture;
+import android.test.AndroidTestCase;
+
+public class RequestCoalescingTests extends AndroidTestCase {
+
+	private static final String BODY = "shared";
+
+	private ServerSocket server;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final CountDownLatch accepted = new CountDownLatch(1);
+	private final CountDownLatch respond = new CountDownLatch(1);
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new ServerSocket(0);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				serve();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		respond.countDown();
+		server.close();
+		super.tearDown();
+	}
+
+	public void testCancelledJoinerLeavesOnce() throws Exception {
+		String url = "http://127.0.0.1:" + server.getLocalPort() + "/coalesce";
+		WebRequestFuture<String> first = WebRequest.readAsync(url, null);
+		assertTrue("Request should reach the server", accepted.await(10, TimeUnit.SECONDS));
+
+		WebRequestFuture<String> second = WebRequest.readAsync(url, null);
+		Thread.sleep(250);
+		assertTrue(second.cancel(true));
+
+		respond.countDown();
+		assertEquals("Remaining caller should still get the shared result", BODY, first.get(10, TimeUnit.SECONDS).trim());
+		assertEquals("Identical requests should share one connection", 1, connections.get());
+	}
+
+	/**
+	 * Answers every request with the same body once the test allows it
+	 */
+	private void serve() {
+		while (true) {
+			Socket socket = null;
+			try {
+				socket = server.accept();
+				connections.incrementAndGet();
+				accepted.countDown();
+				InputStream in = socket.getInputStream();
+				int last = 0, current;
+				while ((current = in.read()) != -1) {
+					// Request headers end with an empty line
+					if (current == '\n' && last == '\n')
+						break;
+					if (current != '\r')
+						last = current;
+				}
+				respond.await();
+				OutputStream out = socket.getOutputStream();
+				out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + BODY.length() +
+						"\r\nConnection: close\r\n\r\n" + BODY).getBytes());
+				out.flush();
+			}
+			catch (IOException e) {
+				return;
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			finally {
+				if (socket != null) {
+					try {
+						socket.close();
+					}
+					catch (IOException e) { }
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package us.beacondigital.samples.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+
+import us.beacondigital.utils.net.cache.CacheControl;
+import us.beacondigital.utils.net.cache.CachedResponse;
+import us.beacondigital.utils.net.cache.HttpResponseCache;
+import android.test.AndroidTestCase;
+
+public class ResponseCacheTests extends AndroidTestCase {
+	
+	public void testFreshnessLifetime() {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		
+		response.setHeader("Cache-Control", "public, max-age=60");
+		assertEquals("max-age should be used as the freshness lifetime", 60 * 1000, CacheControl.parse(response).getFreshnessLifetime());
+		
+		response.setHeader("Age", "20");
+		assertEquals("Age should be subtracted from the freshness lifetime", 40 * 1000, CacheControl.parse(response).getFreshnessLifetime());
+		
+		response.removeHeaders("Age");
+		response.setHeader("Cache-Control", "max-age=60, no-cache");
+		assertEquals("no-cache responses should always be revalidated", 0, CacheControl.parse(response).getFreshnessLifetime());
+		
+		response.removeHeaders("Cache-Control");
+		response.setHeader("Date", "Mon, 01 Jan 2024 00:00:00 GMT");
+		response.setHeader("Expires", "Mon, 01 Jan 2024 00:05:00 GMT");
+		assertEquals("Expires should be measured from Date", 5 * 60 * 1000, CacheControl.parse(response).getFreshnessLifetime());
+		
+		response.setHeader("Expires", "0");
+		assertEquals("An invalid Expires value means already expired", 0, CacheControl.parse(response).getFreshnessLifetime());
+	}
+	
+	public void testFreshAndValidators() {
+		long now = System.currentTimeMillis();
+		Header[] headers = new Header[] {
+				new BasicHeader("Cache-Control", "max-age=60"),
+				new BasicHeader("ETag", "\"abc\"")
+		};
+		CachedResponse cached = new CachedResponse(200, "OK", headers, new byte[0], now);
+		assertTrue("Response should be fresh within max-age", cached.isFresh(now + 30 * 1000));
+		assertFalse("Response should be stale after max-age", cached.isFresh(now + 61 * 1000));
+		assertTrue("ETag should count as a validator", cached.hasValidators());
+		assertEquals("\"abc\"", cached.getETag());
+		
+		HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+		notModified.setHeader("ETag", "\"def\"");
+		CachedResponse revalidated = cached.revalidated(notModified, now + 61 * 1000);
+		assertEquals("Headers from a 304 should replace stored headers", "\"def\"", revalidated.getETag());
+		assertTrue("Revalidated response should be fresh again", revalidated.isFresh(now + 62 * 1000));
+	}
+	
+	public void testVary() throws IOException {
+		Header[] headers = new Header[] {
+				new BasicHeader("Cache-Control", "max-age=60"),
+				new BasicHeader("Vary", "Accept-Language, Accept")
+		};
+		HttpGet english = new HttpGet("http://example.com/");
+		english.addHeader("Accept-Language", "en");
+		String[] names = CachedResponse.getVaryNames(headers);
+		assertEquals(2, names.length);
+		CachedResponse cached = new CachedResponse(200, "OK", headers, new byte[0], 1234L, CachedResponse.selectVaryHeaders(names, english));
+		
+		HttpGet same = new HttpGet("http://example.com/");
+		same.addHeader("Accept-Language", "en");
+		assertTrue("Request with the same varied headers should match", cached.matches(same));
+		HttpGet french = new HttpGet("http://example.com/");
+		french.addHeader("Accept-Language", "fr");
+		assertFalse("Request with a different varied header should not match", cached.matches(french));
+		same.addHeader("Accept", "text/html");
+		assertFalse("Adding a varied header should not match", cached.matches(same));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		cached.writeTo(new DataOutputStream(bytes));
+		CachedResponse read = CachedResponse.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertTrue("Varied headers should be serialized", read.matches(english));
+		assertFalse(read.matches(french));
+		
+		assertNull("Vary: * should never match", CachedResponse.getVaryNames(new Header[] { new BasicHeader("Vary", "*") }));
+		assertFalse(new CachedResponse(200, "OK", new Header[] { new BasicHeader("Vary", "*") }, new byte[0], 1234L).matches(english));
+	}
+	
+	public void testSerialization() throws IOException {
+		Header[] headers = new Header[] {
+				new BasicHeader("Content-Type", "application/json"),
+				new BasicHeader("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT")
+		};
+		byte[] body = "{\"key\":\"value\"}".getBytes();
+		CachedResponse cached = new CachedResponse(200, "OK", headers, body, 1234L);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		cached.writeTo(new DataOutputStream(bytes));
+		CachedResponse read = CachedResponse.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		
+		assertEquals(200, read.getStatusCode());
+		assertEquals(1234L, read.getResponseTime());
+		assertEquals(cached.getLastModified(), read.getLastModified());
+		assertEquals(new String(body), new String(read.getBody()));
+	}
+	
+	public void testDiskStore() {
+		HttpResponseCache cache = new HttpResponseCache(1024, getContext().getCacheDir(), 1024 * 1024);
+		cache.clear();
+		String key = "http://beacondigital.us/data.json";
+		Header[] headers = new Header[] { new BasicHeader("ETag", "\"abc\"") };
+		cache.put(key, new CachedResponse(200, "OK", headers, "data".getBytes(), 1234L));
+		
+		HttpResponseCache reopened = new HttpResponseCache(1024, getContext().getCacheDir(), 1024 * 1024);
+		CachedResponse read = reopened.get(key);
+		assertNotNull("Response should be read back from disk", read);
+		assertEquals("data", new String(read.getBody()));
+		
+		reopened.remove(key);
+		assertNull("Removed response should be gone", reopened.get(key));
+	}
+
+}
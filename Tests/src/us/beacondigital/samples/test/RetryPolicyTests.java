@@ -0,0 +1,72 @@
+package us.beacondigital.samples.test;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+
+import us.beacondigital.utils.net.CircuitBreaker;
+import us.beacondigital.utils.net.RetryPolicy;
+import us.beacondigital.utils.net.WebRequest.Verb;
+import android.test.AndroidTestCase;
+
+public class RetryPolicyTests extends AndroidTestCase {
+	
+	public void testBackoffDelays() {
+		RetryPolicy policy = new RetryPolicy(5, 100, 1000, 0);
+		assertEquals("First retry should wait the base delay", 100, policy.getDelay(1));
+		assertEquals("Delay should double with each attempt", 200, policy.getDelay(2));
+		assertEquals(400, policy.getDelay(3));
+		assertEquals(800, policy.getDelay(4));
+		assertEquals("Delay should be capped at the maximum", 1000, policy.getDelay(5));
+		assertEquals("Delay should stay capped for large attempt numbers", 1000, policy.getDelay(64));
+		
+		RetryPolicy jittered = new RetryPolicy(5, 100, 1000, 0.5);
+		for (int i = 0; i < 100; i++) {
+			long delay = jittered.getDelay(2);
+			assertTrue("Jittered delay should stay between half and all of the delay", delay >= 100 && delay <= 200);
+		}
+	}
+	
+	public void testShouldRetry() {
+		RetryPolicy policy = new RetryPolicy(3, 0, 0, 0);
+		IOException error = new IOException();
+		HttpResponse unavailable = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+		HttpResponse notFound = new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+		
+		assertTrue("GET should be retried after an IOException", policy.shouldRetry(Verb.GET, 1, error, null));
+		assertTrue("GET should be retried after a 503", policy.shouldRetry(Verb.GET, 1, null, unavailable));
+		assertFalse("4xx responses should not be retried", policy.shouldRetry(Verb.GET, 1, null, notFound));
+		assertFalse("POST is not idempotent and should not be retried", policy.shouldRetry(Verb.POST, 1, error, null));
+		assertFalse("Retries should stop at the maximum attempts", policy.shouldRetry(Verb.GET, 3, error, null));
+		assertFalse("NONE should never retry", RetryPolicy.NONE.shouldRetry(Verb.GET, 1, error, null));
+	}
+	
+	public void testCircuitBreaker() throws InterruptedException {
+		CircuitBreaker.resetAll();
+		CircuitBreaker.configure(2, 50);
+		try {
+			CircuitBreaker breaker = CircuitBreaker.forHost("breaker.test");
+			assertSame("Breakers should be shared per host", breaker, CircuitBreaker.forHost("BREAKER.test"));
+			
+			breaker.onFailure();
+			assertTrue("Circuit should stay closed below the threshold", breaker.allowRequest());
+			breaker.onFailure();
+			assertEquals(CircuitBreaker.State.Open, breaker.getState());
+			assertFalse("Open circuit should fail fast", breaker.allowRequest());
+			
+			Thread.sleep(60);
+			assertTrue("A trial request should be allowed after the open period", breaker.allowRequest());
+			assertFalse("Only one trial request should be allowed", breaker.allowRequest());
+			breaker.onSuccess();
+			assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+			assertTrue(breaker.allowRequest());
+		}
+		finally {
+			CircuitBreaker.configure(5, 30 * 1000);
+			CircuitBreaker.resetAll();
+		}
+	}
+
+}